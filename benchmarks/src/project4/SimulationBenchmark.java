@@ -0,0 +1,214 @@
+package project4;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks the hot paths of a simulation tick: the neighbor search, the
+ * movement sweep, the spread phase, the inbox phase and the capture of the
+ * render snapshot, for 1k, 10k and 100k agents placed by the grid and
+ * random initialization modes. The spread and inbox phases are run through
+ * the engine, so only the agents of its active set spread, and they start
+ * every invocation from the same states since the inbox phase infects the
+ * neighbors of the sick agents. The
+ * agentTicks counter reports the throughput in agent-ticks per second, and
+ * running with -prof gc adds the allocation rate. Every tick is run on a
+ * single worker thread, so the results measure the cost per core. Usage:
+ * <pre>java -jar target/benchmarks.jar -prof gc</pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimulationBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int agents;
+
+    @Param({"grid", "random"})
+    public String mode;
+
+    private SimulationEngine engine;
+    private AgentStore store;
+    private List<Agent> population;
+    private final RenderSnapshot snapshot = new RenderSnapshot();
+    private static final int SICK_EVERY = 10;
+
+    /**
+     * Counts the agent-ticks run by a benchmark thread, reported by JMH as
+     * a rate next to the primary result
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class AgentTicks {
+        public long agentTicks;
+
+        /**
+         * Resets the counter at the start of every iteration
+         */
+        @Setup(Level.Iteration)
+        public void clear() {
+            agentTicks = 0;
+        }
+    }
+
+    /**
+     * Builds the population with a fixed seed. The incubation and illness
+     * periods are long enough that no agent recovers during a run, so the
+     * amount of spreading agents stays the same between iterations.
+     */
+    @Setup(Level.Trial)
+    public void build() {
+        Map<String, Double> params = new HashMap<>();
+
+        if (mode.equals("grid")) {
+            int height = gridHeight(agents);
+            params.put("initmode", 0.0);
+            params.put("width", (double) (agents / height));
+            params.put("height", (double) height);
+        } else {
+            params.put("initmode", 1.0);
+            params.put("random", (double) agents);
+        }
+
+        params.put("incubation", 1e9);
+        params.put("sickness", 1e9);
+
+        engine = new SimulationEngine(1);
+        engine.setParams(params);
+        engine.setSeed(42);
+        engine.init();
+        store = engine.getStore();
+        population = engine.getAgents();
+    }
+
+    /**
+     * Returns the population to its initial states before every invocation
+     * of the benchmarks which change the states of the agents. Resetting
+     * the whole population is not timed, but makes these invocations
+     * slower than the others in wall clock time.
+     */
+    @State(Scope.Thread)
+    public static class Epidemic {
+        /**
+         * Resets the population of the benchmark
+         * @param benchmark benchmark whose population is reset
+         */
+        @Setup(Level.Invocation)
+        public void reset(SimulationBenchmark benchmark) {
+            benchmark.prepare();
+        }
+    }
+
+    /**
+     * Returns the population to its initial states, with every tenth agent
+     * sick and every other agent vulnerable, empties every inbox, and finds
+     * the neighbors of the sick agents
+     */
+    @Setup(Level.Iteration)
+    public void prepare() {
+        for (int i = 0; i < store.size(); i++) {
+            store.setState(i, i % SICK_EVERY == 0 ? Agent.State.SICK :
+                    Agent.State.VULNERABLE);
+            store.setDueDay(i, ProgressionCalendar.NONE);
+            population.get(i).clearMessages();
+        }
+
+        engine.reindexAgents();
+        engine.updateNeighbors();
+    }
+
+    /**
+     * Stops the engine's worker thread
+     */
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    /**
+     * Updates the spatial grid and finds the neighbors of every sick agent
+     * @param ticks counter of agent-ticks run
+     */
+    @Benchmark
+    public void neighborSearch(AgentTicks ticks) {
+        engine.updateNeighbors();
+        ticks.agentTicks += store.size();
+    }
+
+    /**
+     * Moves every agent which is not dead
+     * @param ticks counter of agent-ticks run
+     */
+    @Benchmark
+    public void movement(AgentTicks ticks) {
+        store.moveAll(0, store.size(), engine.getSimWidth(),
+                engine.getSimHeight());
+        ticks.agentTicks += store.size();
+    }
+
+    /**
+     * Runs the engine's spread phase, in which the sick agents send
+     * messages to their neighbors
+     * @param epidemic population reset before the invocation
+     * @param ticks counter of agent-ticks run
+     */
+    @Benchmark
+    public void spread(Epidemic epidemic, AgentTicks ticks) {
+        engine.spreadPhase();
+        ticks.agentTicks += store.size();
+    }
+
+    /**
+     * Runs the engine's spread phase to fill the inboxes, then its inbox
+     * phase, in which the messaged agents become infected. The cost of the
+     * inbox phase alone is the difference from the spread benchmark.
+     * @param epidemic population reset before the invocation
+     * @param ticks counter of agent-ticks run
+     */
+    @Benchmark
+    public void processInbox(Epidemic epidemic, AgentTicks ticks) {
+        engine.spreadPhase();
+        engine.inboxPhase(null);
+        ticks.agentTicks += store.size();
+    }
+
+    /**
+     * Captures the positions and states of every agent, grouped by state,
+     * as the UI does before drawing each frame
+     * @param ticks counter of agent-ticks run
+     * @return the captured snapshot
+     */
+    @Benchmark
+    public RenderSnapshot renderSnapshot(AgentTicks ticks) {
+        snapshot.capture(store);
+        ticks.agentTicks += store.size();
+        return snapshot;
+    }
+
+    /**
+     * @param agents amount of agents in the grid
+     * @return Largest grid height which divides the amount of agents and is
+     * no larger than its square root
+     */
+    private static int gridHeight(int agents) {
+        int height = (int) Math.sqrt(agents);
+        while (agents % height != 0) height--;
+        return height;
+    }
+}
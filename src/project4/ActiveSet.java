@@ -0,0 +1,89 @@
+package project4;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of the store indices of the agents which are currently
+ * infectious, meaning sick or asymptomatic. The members are kept packed at
+ * the front of one int array, and a second array maps every agent to its
+ * position in the first, so adding, removing and testing an agent take
+ * constant time and iterating the set only visits its members. The spread
+ * phase and the neighbor search iterate this set rather than the whole
+ * population, so their cost follows the amount of infectious agents. The
+ * order of the members is not meaningful.
+ */
+public class ActiveSet {
+    private int[] members = new int[16];
+    private int[] position = new int[0];
+    private int size = 0;
+
+    /**
+     * Adds an agent to the set, if it is not already a member. Safe to call
+     * from any thread, such as from the inbox phase.
+     * @param agent store index of the agent
+     */
+    protected synchronized void add(int agent) {
+        if (agent >= position.length) {
+            int capacity = Math.max(agent + 1, position.length * 3 / 2);
+            int old = position.length;
+            position = Arrays.copyOf(position, capacity);
+            Arrays.fill(position, old, capacity, -1);
+        }
+
+        if (position[agent] != -1) return;
+        if (size == members.length) {
+            members = Arrays.copyOf(members, size * 2);
+        }
+
+        position[agent] = size;
+        members[size++] = agent;
+    }
+
+    /**
+     * Removes an agent from the set, if it is a member, moving the last
+     * member into its position. Safe to call from any thread.
+     * @param agent store index of the agent
+     */
+    protected synchronized void remove(int agent) {
+        if (agent >= position.length || position[agent] == -1) return;
+        int last = members[--size];
+        members[position[agent]] = last;
+        position[last] = position[agent];
+        position[agent] = -1;
+    }
+
+    /**
+     * Empties the set and adds every infectious agent of the store, after
+     * the agents were reset, restored, forked or moved
+     * @param store store holding the agents' states
+     * @param agents amount of agents in the store
+     */
+    protected synchronized void rebuild(AgentStore store, int agents) {
+        size = 0;
+        Arrays.fill(position, -1);
+
+        for (int i = 0; i < agents; i++) {
+            byte state = store.getState(i);
+
+            if (state == Agent.State.SICK.ordinal() ||
+                    state == Agent.State.ASYMPTOMATIC.ordinal()) {
+                add(i);
+            }
+        }
+    }
+
+    /**
+     * @return Amount of agents in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param k position in the set, from 0 to size-1
+     * @return Store index of the agent at that position
+     */
+    public int get(int k) {
+        return members[k];
+    }
+}
@@ -1,58 +1,60 @@
 package project4;
 
-import javafx.application.Platform;
-import javafx.scene.paint.Color;
-import java.util.ArrayList;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import static java.lang.Math.random;
+import java.util.concurrent.Phaser;
 
 /**
  * Object representing the active agents which comprise the population
  * used to model the disease spread during the simulation. This could be
- * people, fish, cells, etc. Each agent runs on its own thread, which is
- * used to move the agent, process potential state changes, and notify
- * neighboring agents of potential exposure.
+ * people, fish, cells, etc. The agent's position, heading, state and
+ * progress are kept in the engine's AgentStore, and the agent object is a
+ * lightweight view onto its index in the store. Each simulation tick the
+ * engine's worker threads move the agent, notify neighboring agents of
+ * potential exposure, and process potential state changes, in separate
+ * phases. Disease parameters and simulation settings are read from the
+ * owning SimulationEngine, and state changes are reported back to it.
+ * Agents can also run as actors on their own threads, see AgentThreads.
  */
 public class Agent implements Runnable {
-    private double x;
-    private double y;
-    private double direction;
-    private final BlockingQueue<Message> inbox;
-    private State state;
-    private ArrayList<Agent> neighbors;
-    private ArrayList<Agent> neighborsUpdate;
-    private int agentNum;
-    private int daysSick = 0;
-    private static boolean paused = false;
-    private static boolean moveOn = true;
-    private static double probToSpread;
-    private static double probToGetSick = .75;
-    private static double probToDie;
-    private static double daysOfIncubation;
-    private static double daysOfSickness;
-    private static double screenWidth = 200;
-    private static double screenHeight = 200;
-    private static double dayLength;
-    private static long simSpeed = 100;
-    private static final double MOVE_RADIUS = 2;
+    private final SimulationEngine engine;
+    private final AgentStore store;
+    private final int index;
+    private Phaser phaser;
+    private static final State[] STATES = State.values();
+    private static final Message[] MESSAGES = Message.values();
+    private static final int HAVE_GERMS = 1 << Message.HAVE_GERMS.ordinal();
+    protected static final int MESSAGE_TYPES = MESSAGES.length;
 
     /**
      * All 6 states which an agent can take on during the simulation
      */
-    private enum State {
-        VULNERABLE,
-        INFECTED,
-        ASYMPTOMATIC,
-        SICK,
-        IMMUNE,
-        DEAD
+    public enum State {
+        VULNERABLE("vulnerable"),
+        INFECTED("infected"),
+        ASYMPTOMATIC("asymptomatic"),
+        SICK("sick"),
+        IMMUNE("immune"),
+        DEAD("dead");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return Lower case name of the state, as shown in the history
+         */
+        @Override
+        public String toString() {
+            return label;
+        }
     }
 
     /**
      * All 5 messages which agents can send to each other, or to themselves.
      * Each message directs an agent to undergo a specific state change, if
-     * possible, once it is processed.
+     * possible, once it is processed. The inbox holds at most one of each
+     * message, since receiving the same message again means the same thing.
      */
     private enum Message {
         HAVE_GERMS,
@@ -64,190 +66,136 @@ public class Agent implements Runnable {
 
     /**
      * Agent is constructed either vulnerable or infected, with and x and y
-     * coordinate, and a number
+     * coordinate, and a number. Its fields are added to the given store.
+     * @param engine Simulation engine which owns this agent
+     * @param store Store which holds the agent's state
      * @param infected Initial agent state
      * @param x X position in the simulation UI
      * @param y Y position in the simulation UI
      * @param agentNum Unique integer ID
+     * @param seed Seed of the agent's own random stream
      */
-    public Agent(boolean infected, double x, double y, int agentNum) {
-        inbox = new ArrayBlockingQueue<>(50);
-        this.x = x;
-        this.y = y;
-        this.agentNum = agentNum;
-        direction = Math.random()*2*Math.PI;
-        neighbors = new ArrayList<>();
-        neighborsUpdate = new ArrayList<>();
-        if(infected) this.state = State.INFECTED;
-        else this.state = State.VULNERABLE;
-    }
-
-    /**
-     * Runs the simulation logic then waits for a set amount of time. The
-     * agents move every time the loop runs, but the logic to spread the
-     * disease only runs every 5 times the loop runs. All state changes and
-     * messages are run through each agent's inbox to avoid conflicts.
-     */
-    @Override
-    public void run() {
-        int frameCount = 0;
-        while(true) {
-            try {
-                Thread.sleep(simSpeed);
-            } catch (InterruptedException e) {
-                System.out.println("e");
-            }
-
-            if (!paused) {
-                if(state != State.DEAD && moveOn) moveRandDir();
-                frameCount++;
-                if (frameCount == 5) {
-                    if (state == State.SICK || state == State.ASYMPTOMATIC) {
-                        for (Agent agent : neighbors) {
-                            if (agent != null) {
-                                if (random() < probToSpread) {
-                                    agent.sendMessage(Message.HAVE_GERMS);
-                                }
-                            }
-                        }
-                        daysSick++;
-                        if (daysSick >= daysOfSickness) {
-                            if(state == State.SICK) {
-                                if (random() < probToDie) inbox.add(Message.BECOME_DEAD);
-                                else inbox.add(Message.BECOME_IMMUNE);
-                                StatsGraph.decSick();
-                            }
-                            if(state == State.ASYMPTOMATIC) {
-                                inbox.add(Message.BECOME_IMMUNE);
-                                StatsGraph.decAsym();
-                            }
-                            daysSick = 0;
-                        }
-                    }
-                    if(state == State.INFECTED){
-                        daysSick++;
-                        if(daysSick >= daysOfIncubation){
-                            if(random() < probToGetSick) {
-                                inbox.add(Message.BECOME_SICK);
-                            } else {
-                                inbox.add(Message.BECOME_ASYMPTOMATIC);
-                            }
-                            daysSick = 0;
-                        }
-                    }
-
-                    if (!inbox.isEmpty()) {
-                        processInbox();
-                    }
-                    frameCount = 0;
-                }
-            }
-            setNeighbors();
-        }
-    }
-
-    /**
-     * Sets the agents neighbors. Only run after simulation logic is done.
-     */
-    private void setNeighbors(){
-        neighbors.clear();
-        neighbors.addAll(neighborsUpdate);
-    }
-
-    /**
-     * Stores the agents new neighbors until the simulation logic is done.
-     * @param agents new neighbors
-     */
-    protected void updateNeighbors(ArrayList<Agent> agents){
-        neighborsUpdate.clear();
-        neighborsUpdate.addAll(agents);
-    }
-
-    /**
-     * Updates the probability for the disease to spread between agents
-     * upon contact with a sick or asymptomatic agent
-     * @param probToSpread new probability of disease spread
-     */
-    protected static void setProbToSpread(double probToSpread) {
-        Agent.probToSpread = probToSpread;
-    }
-
-    /**
-     * Updates the probability for an infected agent to become sick after
-     * the incubation period has ended
-     * @param probToGetSick new probability of becoming sick rather than
-     *                      asymptomatic
-     */
-    protected static void setProbToGetSick(double probToGetSick) {
-        Agent.probToGetSick = probToGetSick;
+    public Agent(SimulationEngine engine, AgentStore store, boolean infected,
+                 double x, double y, int agentNum, long seed) {
+        this.engine = engine;
+        this.store = store;
+        this.index = store.add(x, y,
+                infected ? State.INFECTED : State.VULNERABLE, agentNum, seed);
     }
 
     /**
-     * Updates the probability for a sick agent to die after the illness
-     * period has ended
-     * @param probToDie new probability of death due to sickness
+     * Creates a view onto an agent which is already in the given store,
+     * used when a simulation is forked
+     * @param engine Simulation engine which owns this agent
+     * @param store Store which holds the agent's state
+     * @param index Index of the agent in the store
      */
-    protected static void setProbToDie(double probToDie) {
-        Agent.probToDie = probToDie;
+    protected Agent(SimulationEngine engine, AgentStore store, int index) {
+        this.engine = engine;
+        this.store = store;
+        this.index = index;
     }
 
     /**
-     * Updates the amount of days in the disease's incubation period
-     * @param daysOfIncubation new incubation period length in simulation days
+     * Actor loop, used when each agent runs on its own thread. The agent
+     * parks on the shared tick signal and runs each phase of a tick once
+     * the engine's driver releases it, until the signal is terminated.
      */
-    protected static void setDaysOfIncubation(double daysOfIncubation) {
-        Agent.daysOfIncubation = daysOfIncubation;
+    @Override
+    public void run() {
+        while (awaitPhase()) {
+            move();
+            if (!awaitPhase()) return;
+            if (!awaitPhase()) return;
+            if (engine.isDayTick()) spread();
+            if (!awaitPhase()) return;
+            if (!awaitPhase()) return;
+            if (engine.isDayTick()) processMessages();
+            if (!awaitPhase()) return;
+        }
     }
 
     /**
-     * Updates the amount of days in the disease's illness period
-     * @param daysOfSickness new illness period length in simulation days
+     * Arrives at the tick signal and parks until every other agent and the
+     * engine's driver have arrived as well
+     * @return False if the tick signal was terminated, otherwise true
      */
-    protected static void setDaysOfSickness(double daysOfSickness) {
-        Agent.daysOfSickness = daysOfSickness;
+    private boolean awaitPhase() {
+        return phaser.arriveAndAwaitAdvance() >= 0;
     }
 
     /**
-     * Updates the stored screen width of the simulation area, so that an
-     * agent cannot move left or right out of the simulation area
-     * @param screenWidth new simulation width in pixels
+     * Sets the tick signal this agent parks on when it runs as an actor
+     * @param phaser phaser which the agent is registered with
      */
-    protected static void setScreenWidth(double screenWidth) {
-        Agent.screenWidth = screenWidth;
+    protected void setPhaser(Phaser phaser) {
+        this.phaser = phaser;
     }
 
     /**
-     * Updates the stored screen height of the simulation area, so that an
-     * agent cannot move up or down out of the simulation area
-     * @param screenHeight new simulation height in pixels
+     * Movement phase of a tick. Moves the agent unless it is dead or
+     * movement is turned off.
      */
-    protected static void setScreenHeight(double screenHeight) {
-        Agent.screenHeight = screenHeight;
+    protected void move() {
+        if(getState() != State.DEAD && engine.isMoveOn()) {
+            store.move(index, engine.getSimWidth(), engine.getSimHeight());
+        }
     }
 
     /**
-     * Updates the delay between each agent movement during the simulation
-     * @param simSpeed new movement delay in milliseconds
+     * Spread phase of a tick, only run once per simulation day. Sick and
+     * asymptomatic agents notify their neighbors of potential exposure.
+     * All state changes and messages are run through each agent's inbox to
+     * avoid conflicts.
      */
-    protected static void setSimSpeed(long simSpeed) {
-        Agent.simSpeed = simSpeed;
-        Agent.dayLength = 5000000*simSpeed;
+    protected void spread() {
+        State state = getState();
+        if (state == State.SICK || state == State.ASYMPTOMATIC) {
+            NeighborTable.Buffer table = engine.getNeighborTable().current();
+
+            for (int k = table.start(index); k < table.end(index); k++) {
+                if (store.nextDouble(index) < engine.getProbToSpread()) {
+                    store.sendMail(table.neighbor(k), HAVE_GERMS);
+                }
+            }
+        }
     }
 
     /**
-     * Updates whether the agent threads are paused or not
-     * @param pauseOn True to pause, false to resume
+     * Progression phase of a tick, only run on the day the agent's
+     * incubation or illness period ends, after its spread phase. The agent
+     * sends itself its next state change, which takes effect in the inbox
+     * phase of the same day.
      */
-    protected static void setPaused(boolean pauseOn) {
-        Agent.paused = pauseOn;
+    protected void progress() {
+        switch (getState()) {
+            case INFECTED -> {
+                if (store.nextDouble(index) < engine.getProbToGetSick()) {
+                    sendMessage(Message.BECOME_SICK);
+                } else {
+                    sendMessage(Message.BECOME_ASYMPTOMATIC);
+                }
+            }
+            case SICK -> {
+                if (store.nextDouble(index) < engine.getProbToDie()) {
+                    sendMessage(Message.BECOME_DEAD);
+                } else sendMessage(Message.BECOME_IMMUNE);
+            }
+            case ASYMPTOMATIC -> sendMessage(Message.BECOME_IMMUNE);
+            default -> {
+                //do nothing
+            }
+        }
     }
 
     /**
-     * Updates whether agents are allowed to move or not
-     * @param moveOn True if movement is allowed, otherwise false
+     * Inbox phase of a tick, only run once per simulation day after every
+     * agent has finished its spread phase
      */
-    protected static void setMovement(boolean moveOn) {
-        Agent.moveOn = moveOn;
+    protected void processMessages() {
+        if (hasMessages()) {
+            processInbox();
+        }
     }
 
     /**
@@ -256,25 +204,7 @@ public class Agent implements Runnable {
      * @param y y coordinate of the new location
      */
     protected void relocate(double x, double y) {
-        this.x = x;
-        this.y = y;
-    }
-
-    /**
-     * changes the heading of the agent by up to (+/-) 1/8 pi radians.
-     * Moves the agent up to 2 pixels in the direction of the heading.
-     * If the agent goes off-screen its heading is changed to go back onto
-     * the screen.
-     */
-    private void moveRandDir(){
-        direction += (Math.random()-.5)*.25*Math.PI;
-        double moveDistance = MOVE_RADIUS *(Math.random()*.5)+.5;
-        x += Math.cos(direction)*moveDistance;
-        y += Math.sin(direction)*moveDistance;
-        if(x > screenWidth-5) direction = Math.PI;
-        if(y > screenHeight-5) direction = 1.5*Math.PI;
-        if(x < 0) direction = 0;
-        if(y < 0) direction = .5*Math.PI;
+        store.relocate(index, x, y);
     }
 
     /**
@@ -283,125 +213,111 @@ public class Agent implements Runnable {
      * @param infected True -> infected state, false -> vulnerable state
      */
     protected void resetState(boolean infected) {
-        this.state = infected ? State.INFECTED : State.VULNERABLE;
+        store.setState(index, infected ? State.INFECTED : State.VULNERABLE);
+        store.setDueDay(index, ProgressionCalendar.NONE);
     }
 
     /**
      * Clears the inbox for this agent for simulation reset purposes
      */
     protected void clearMessages() {
-        this.inbox.clear();
+        store.takeMail(index);
     }
 
     /**
-     * Adds a message to this agent's inbox
+     * Adds a message to this agent's inbox. The inbox is a set of the
+     * messages waiting in the agent's mailbox in the store, so a message
+     * which is already waiting is merged with the new one and sending never
+     * blocks or fails, however many agents send to this one at once.
      * @param message new message to be sent to this agent's inbox
      */
     public void sendMessage(Message message) {
-        inbox.add(message);
+        store.sendMail(index, 1 << message.ordinal());
+    }
+
+    /**
+     * @return True if this agent has messages waiting to be processed
+     */
+    protected boolean hasMessages() {
+        return store.getMail(index) != 0;
     }
 
     /**
      * Process every message in the inbox and sets the state accordingly.
-     * If the agents state is changed the historyPane and StatsGraph records
-     * this state change. The whole inbox must be processed everytime the
-     * simulation logic is run because a single agent can receive many
-     * HAVE_GERMS messages at once.
+     * If the agents state is changed the engine is notified, so that its
+     * listeners can record this state change, and the engine schedules the
+     * period of the new state. The whole inbox is taken at
+     * once and its messages are processed in the order they are declared.
      */
     private void processInbox(){
-        for (int i = 0; i < inbox.size(); i++) {
-            Message message = inbox.poll();
-            boolean stateChange = true;
-            if (message != null) {
+        int mail = store.takeMail(index);
+        State initialState = getState();
+
+        for (Message message : MESSAGES) {
+            if ((mail & 1 << message.ordinal()) != 0) {
+                State oldState = getState();
+                State state = oldState;
                 switch (message) {
                     case HAVE_GERMS:
                         if (state == State.VULNERABLE)
                             state = State.INFECTED;
-                        else stateChange = false;
                         break;
                     case BECOME_DEAD:
                         state = State.DEAD;
-                        StatsGraph.incDead();
                         break;
                     case BECOME_IMMUNE:
                         state = State.IMMUNE;
-                        StatsGraph.incImm();
                         break;
                     case BECOME_ASYMPTOMATIC:
                         state = State.ASYMPTOMATIC;
-                        StatsGraph.incAsym();
                         break;
                     case BECOME_SICK:
                         state = State.SICK;
-                        StatsGraph.incSick();
                         break;
-                    default: stateChange = false;
+                    default: break;
+                }
+                if(state != oldState) {
+                    store.setState(index, state);
+                    engine.stateChanged(store.getId(index), oldState, state);
                 }
-                if(stateChange) Platform.runLater(() -> HistoryPane.addToHistory(agentNum,this.toString()));
             }
         }
+        State state = getState();
+        if (state != initialState) engine.enterState(index, state);
     }
 
     /**
      * @return String representation of the agent's current state
      */
     public String toString(){
-        return switch (state) {
-            case DEAD -> "dead";
-            case VULNERABLE -> "vulnerable";
-            case INFECTED -> "infected";
-            case ASYMPTOMATIC -> "asymptomatic";
-            case SICK -> "sick";
-            case IMMUNE -> "immune";
-        };
+        return getState().toString();
     }
 
     /**
-     * @return Color shade used to represent this agent's current state
+     * @return This agent's current state
      */
-    protected Color getStateColor(){
-        return switch (state) {
-            case VULNERABLE -> Color.BLUE;
-            case INFECTED -> Color.SALMON;
-            case SICK -> Color.RED;
-            case DEAD -> Color.BLACK;
-            case IMMUNE -> Color.GREEN;
-            case ASYMPTOMATIC -> Color.YELLOWGREEN;
-        };
+    public State getState() {
+        return STATES[store.getState(index)];
     }
 
     /**
-     * @return True if all agent threads are currently paused, otherwise false
+     * @return Index of this agent in the engine's AgentStore
      */
-    public static boolean isPaused() {
-        return paused;
+    public int getIndex() {
+        return index;
     }
 
     /**
      * @return x coordinate of this agent's current position
      */
-    public synchronized double getX() {
-        return x;
+    public double getX() {
+        return store.getX(index);
     }
 
     /**
      * @return y coordinate of this agent's current position
      */
-    public synchronized double getY() {
-        return y;
-    }
-
-    /**
-     * @return Current length in milliseconds of simulation days
-     */
-    protected static synchronized double getDayLength(){
-        return dayLength;
-    }
-
-    /**
-     * @return delay between each agent movement during the simulation
-     */
-    protected static synchronized long getSimSpeed() {
-        return simSpeed;
+    public double getY() {
+        return store.getY(index);
     }
 }
@@ -0,0 +1,594 @@
+package project4;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Struct-of-arrays storage for the per-agent simulation state. Instead of
+ * every agent being a separate heap object with its own fields, each field
+ * is a column of primitives indexed by the agent's position in the store.
+ * Agent objects are lightweight views onto one index of the store, and
+ * whole-population loops such as movement run as linear sweeps over the
+ * columns. Every agent also has its own SplitMix64 random stream, whose
+ * state is kept in a column, so agents never share a generator. Each agent's
+ * mailbox is a bitset of the message types waiting for it, held in an
+ * atomic column so that any thread can send to any agent. A store can be
+ * forked in memory: the fork shares every column with its source, and a
+ * shared column is only copied once a phase is about to write to it, see
+ * own. Agents can also be removed and appended after the store is built,
+ * which lets a TileWorker hand agents over to the worker owning the strip
+ * they moved into.
+ */
+public class AgentStore {
+    private double[] x;
+    private double[] y;
+    private double[] direction;
+    private byte[] state;
+    private int[] dueDay;
+    private int[] id;
+    private long[] rng;
+    private AtomicIntegerArray mail;
+    private int size = 0;
+    private int shared = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int DIRECTION = 4;
+    private static final int STATE = 8;
+    private static final int DUE_DAY = 16;
+    private static final int RNG = 32;
+    private static final int ID = 64;
+    private static final int ALL = X | Y | DIRECTION | STATE | DUE_DAY |
+            RNG | ID;
+    /** Columns written by the movement phase */
+    protected static final int MOVEMENT = X | Y | DIRECTION | RNG;
+    /** Columns written by the spread and inbox phases */
+    protected static final int PROGRESSION = STATE | DUE_DAY | RNG;
+    private static final double MOVE_RADIUS = 2;
+    private static final int MOVE_BLOCK = 256;
+    private static final ThreadLocal<double[]> MOVE_DISTANCE =
+            ThreadLocal.withInitial(() -> new double[MOVE_BLOCK]);
+    private static final byte DEAD = (byte) Agent.State.DEAD.ordinal();
+
+    /**
+     * Creates a new, empty store
+     * @param capacity maximum amount of agents in the store
+     */
+    public AgentStore(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        direction = new double[capacity];
+        state = new byte[capacity];
+        dueDay = new int[capacity];
+        id = new int[capacity];
+        rng = new long[capacity];
+        mail = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Creates a fork of the given store which shares all of its columns,
+     * except for the mailboxes, which are copied
+     * @param source store to be forked
+     */
+    private AgentStore(AgentStore source) {
+        x = source.x;
+        y = source.y;
+        direction = source.direction;
+        state = source.state;
+        dueDay = source.dueDay;
+        id = source.id;
+        rng = source.rng;
+        mail = new AtomicIntegerArray(source.id.length);
+        size = source.size;
+        shared = ALL;
+
+        for (int i = 0; i < size; i++) {
+            mail.set(i, source.mail.get(i));
+        }
+    }
+
+    /**
+     * Forks the store in memory. The fork and this store share every column
+     * until one of them writes to it, so a fork only costs the memory of
+     * the columns its simulation changes. Must not be called while a phase
+     * is running.
+     * @return Fork holding the same agents as this store
+     */
+    protected AgentStore fork() {
+        shared = ALL;
+        return new AgentStore(this);
+    }
+
+    /**
+     * Makes sure that the given columns are not shared with a fork, copying
+     * every one of them which still is. Must be called before a phase
+     * writes to the columns, while no phase is running, since the phases
+     * themselves write to the columns without checking.
+     * @param columns bitset of columns, such as MOVEMENT or PROGRESSION
+     */
+    protected void own(int columns) {
+        int copy = shared & columns;
+        if (copy == 0) return;
+
+        if ((copy & X) != 0) x = x.clone();
+        if ((copy & Y) != 0) y = y.clone();
+        if ((copy & DIRECTION) != 0) direction = direction.clone();
+        if ((copy & STATE) != 0) state = state.clone();
+        if ((copy & DUE_DAY) != 0) dueDay = dueDay.clone();
+        if ((copy & RNG) != 0) rng = rng.clone();
+        if ((copy & ID) != 0) id = id.clone();
+        shared &= ~copy;
+    }
+
+    /**
+     * Resizes every column to the given capacity, which must be at least
+     * the amount of agents. Columns shared with a fork are copied as well.
+     * @param capacity new maximum amount of agents in the store
+     */
+    private void resize(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        state = Arrays.copyOf(state, capacity);
+        dueDay = Arrays.copyOf(dueDay, capacity);
+        id = Arrays.copyOf(id, capacity);
+        rng = Arrays.copyOf(rng, capacity);
+        AtomicIntegerArray resized = new AtomicIntegerArray(capacity);
+
+        for (int i = 0; i < size; i++) {
+            resized.set(i, mail.get(i));
+        }
+
+        mail = resized;
+        shared = 0;
+    }
+
+    /**
+     * Makes room for one more agent, doubling the capacity if the store is
+     * full, and makes sure no column is shared with a fork
+     */
+    private void reserve() {
+        if (size == id.length) {
+            resize(Math.max(16, size * 2));
+        } else {
+            own(ALL);
+        }
+    }
+
+    /**
+     * Adds an agent to the end of the store. Its initial heading is drawn
+     * from its own random stream.
+     * @param x x coordinate of the agent's position
+     * @param y y coordinate of the agent's position
+     * @param state initial state of the agent
+     * @param id unique integer ID of the agent
+     * @param seed seed of the agent's random stream
+     * @return Index of the new agent in the store
+     */
+    protected int add(double x, double y, Agent.State state, int id,
+                      long seed) {
+        reserve();
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.state[i] = (byte) state.ordinal();
+        this.dueDay[i] = ProgressionCalendar.NONE;
+        this.id[i] = id;
+        this.rng[i] = seed;
+        this.mail.set(i, 0);
+        this.direction[i] = (nextDouble(i)*2 - 1)*Math.PI;
+        return i;
+    }
+
+    /**
+     * Adds an entry to the end of the store which only holds a position.
+     * It takes part in neighbor searches and can receive mail, but is not
+     * an agent of this store and must be removed with truncate before the
+     * next phase which moves or counts the agents.
+     * @param x x coordinate of the entry
+     * @param y y coordinate of the entry
+     * @return Index of the new entry
+     */
+    protected int addGhost(double x, double y) {
+        reserve();
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.state[i] = 0;
+        this.dueDay[i] = ProgressionCalendar.NONE;
+        this.id[i] = -1;
+        this.rng[i] = 0;
+        this.direction[i] = 0;
+        this.mail.set(i, 0);
+        return i;
+    }
+
+    /**
+     * Removes an agent by moving the last agent of the store into its
+     * index, so the order of the agents is not kept
+     * @param i index of the agent to be removed
+     */
+    protected void remove(int i) {
+        own(ALL);
+        int last = --size;
+        x[i] = x[last];
+        y[i] = y[last];
+        direction[i] = direction[last];
+        state[i] = state[last];
+        dueDay[i] = dueDay[last];
+        id[i] = id[last];
+        rng[i] = rng[last];
+        mail.set(i, mail.get(last));
+        mail.set(last, 0);
+    }
+
+    /**
+     * Removes every agent from the given index onwards
+     * @param size amount of agents to be kept
+     */
+    protected void truncate(int size) {
+        for (int i = size; i < this.size; i++) {
+            mail.set(i, 0);
+        }
+
+        this.size = Math.min(this.size, size);
+    }
+
+    /**
+     * Writes every field of one agent to a stream, except for its mail
+     * @param i index of the agent
+     * @param out stream the agent is written to
+     * @throws IOException If the stream cannot be written
+     */
+    protected void writeAgent(int i, DataOutput out) throws IOException {
+        out.writeDouble(x[i]);
+        out.writeDouble(y[i]);
+        out.writeDouble(direction[i]);
+        out.writeByte(state[i]);
+        out.writeInt(dueDay[i]);
+        out.writeInt(id[i]);
+        out.writeLong(rng[i]);
+    }
+
+    /**
+     * Adds an agent written by writeAgent to the end of the store
+     * @param in stream the agent is read from
+     * @return Index of the new agent
+     * @throws IOException If the stream cannot be read
+     */
+    protected int readAgent(DataInput in) throws IOException {
+        reserve();
+        int i = size++;
+        x[i] = in.readDouble();
+        y[i] = in.readDouble();
+        direction[i] = in.readDouble();
+        state[i] = in.readByte();
+        dueDay[i] = in.readInt();
+        id[i] = in.readInt();
+        rng[i] = in.readLong();
+        mail.set(i, 0);
+        return i;
+    }
+
+    /**
+     * Draws the next number of an agent's own random stream. Only the
+     * thread currently running the agent may call this.
+     * @param i index of the agent
+     * @return Pseudo-random double uniform in the range [0, 1)
+     */
+    protected double nextDouble(int i) {
+        long state = SplitMix64.advance(rng[i]);
+        rng[i] = state;
+        return SplitMix64.toDouble(state);
+    }
+
+    /**
+     * Moves every agent with an index in the given range which is not dead,
+     * with the same result as calling move on each of them. The agents are
+     * moved in blocks, in three passes over each block: the first draws the
+     * new heading and distance of each agent from its random stream, the
+     * second updates every position with approxCos and approxSin, and the
+     * third turns the agents which left the area back onto it. The second
+     * pass is branch-free arithmetic over primitive columns, which the JIT
+     * compiles to SIMD instructions, so it costs little more than streaming
+     * the columns through memory. Dead agents move a distance of 0 there,
+     * which leaves their position unchanged.
+     * @param from index of the first agent, inclusive
+     * @param to index of the last agent, exclusive
+     * @param width width (in pixels) of the simulation area
+     * @param height height (in pixels) of the simulation area
+     */
+    protected void moveAll(int from, int to, double width, double height) {
+        double[] distance = MOVE_DISTANCE.get();
+
+        for (int start = from; start < to; start += MOVE_BLOCK) {
+            int end = Math.min(to, start + MOVE_BLOCK);
+
+            for (int i = start; i < end; i++) {
+                if (state[i] == DEAD) {
+                    distance[i - start] = 0;
+                } else {
+                    direction[i] = turn(i);
+                    distance[i - start] = stride(i);
+                }
+            }
+
+            for (int i = start; i < end; i++) {
+                double dir = direction[i];
+                x[i] = x[i] + approxCos(dir) * distance[i - start];
+                y[i] = y[i] + approxSin(dir) * distance[i - start];
+            }
+
+            for (int i = start; i < end; i++) {
+                if (state[i] != DEAD) {
+                    direction[i] = bounce(direction[i], x[i], y[i], width,
+                            height);
+                }
+            }
+        }
+    }
+
+    /**
+     * changes the heading of the agent by up to (+/-) 1/8 pi radians.
+     * Moves the agent up to 2 pixels in the direction of the heading.
+     * If the agent goes off-screen its heading is changed to go back onto
+     * the screen. This is the scalar form of moveAll, used when agents
+     * move one at a time on their own threads.
+     * @param i index of the agent
+     * @param width width (in pixels) of the simulation area
+     * @param height height (in pixels) of the simulation area
+     */
+    protected void move(int i, double width, double height) {
+        double dir = turn(i);
+        double moveDistance = stride(i);
+        x[i] = x[i] + approxCos(dir) * moveDistance;
+        y[i] = y[i] + approxSin(dir) * moveDistance;
+        direction[i] = bounce(dir, x[i], y[i], width, height);
+    }
+
+    /**
+     * Draws the agent's next heading from its random stream
+     * @param i index of the agent
+     * @return The agent's heading turned by up to (+/-) 1/8 pi radians
+     */
+    private double turn(int i) {
+        return direction[i] + (nextDouble(i)-.5)*.25*Math.PI;
+    }
+
+    /**
+     * Draws the distance the agent moves from its random stream
+     * @param i index of the agent
+     * @return Distance between .5 and 1.5 pixels
+     */
+    private double stride(int i) {
+        return MOVE_RADIUS *(nextDouble(i)*.5)+.5;
+    }
+
+    /**
+     * Turns an agent which has moved off-screen back onto the screen, and
+     * wraps its heading into [-pi, pi) so that approxCos and approxSin stay
+     * accurate
+     * @param dir heading the agent moved in
+     * @param newX x coordinate of the agent after moving
+     * @param newY y coordinate of the agent after moving
+     * @param width width (in pixels) of the simulation area
+     * @param height height (in pixels) of the simulation area
+     * @return The agent's new heading
+     */
+    private static double bounce(double dir, double newX, double newY,
+                                 double width, double height) {
+        if(newX > width-5) dir = Math.PI;
+        if(newY > height-5) dir = 1.5*Math.PI;
+        if(newX < 0) dir = 0;
+        if(newY < 0) dir = .5*Math.PI;
+        if (dir >= Math.PI) dir -= 2*Math.PI;
+        else if (dir < -Math.PI) dir += 2*Math.PI;
+        return dir;
+    }
+
+    /**
+     * Polynomial approximation of the cosine, accurate to about 1e-11 for
+     * angles within 9/8 pi of 0, which covers every heading once turned,
+     * since headings are kept within [-pi, pi). The angle is quartered,
+     * the sine and cosine of the quarter angle are taken from their Taylor
+     * series, and the double angle formulas are applied twice. Unlike Math.cos, it is only
+     * multiplications and additions, so loops over it can be vectorized.
+     * @param angle angle in radians
+     * @return Approximate cosine of the angle
+     */
+    protected static double approxCos(double angle) {
+        double q = angle * .25;
+        double sin = quarterSin(q);
+        double cos = quarterCos(q);
+        double halfSin = 2 * sin * cos;
+        return 1 - 2 * halfSin * halfSin;
+    }
+
+    /**
+     * Polynomial approximation of the sine, see approxCos
+     * @param angle angle in radians
+     * @return Approximate sine of the angle
+     */
+    protected static double approxSin(double angle) {
+        double q = angle * .25;
+        double sin = quarterSin(q);
+        double cos = quarterCos(q);
+        double halfSin = 2 * sin * cos;
+        double halfCos = 1 - 2 * sin * sin;
+        return 2 * halfSin * halfCos;
+    }
+
+    /**
+     * @param q angle of at most about pi/2 in magnitude
+     * @return Taylor series of the sine of q up to the 13th power
+     */
+    private static double quarterSin(double q) {
+        double q2 = q * q;
+        return q * (1 + q2 * (-1 / 6.0 + q2 * (1 / 120.0 +
+                q2 * (-1 / 5040.0 + q2 * (1 / 362880.0 +
+                q2 * (-1 / 39916800.0 + q2 * (1 / 6227020800.0)))))));
+    }
+
+    /**
+     * @param q angle of at most about pi/2 in magnitude
+     * @return Taylor series of the cosine of q up to the 12th power
+     */
+    private static double quarterCos(double q) {
+        double q2 = q * q;
+        return 1 + q2 * (-1 / 2.0 + q2 * (1 / 24.0 + q2 * (-1 / 720.0 +
+                q2 * (1 / 40320.0 + q2 * (-1 / 3628800.0 +
+                q2 * (1 / 479001600.0))))));
+    }
+
+    /**
+     * Moves the agent to the specified location
+     * @param i index of the agent
+     * @param x x coordinate of the new location
+     * @param y y coordinate of the new location
+     */
+    protected void relocate(int i, double x, double y) {
+        this.x[i] = x;
+        this.y[i] = y;
+    }
+
+    /**
+     * Adds messages to an agent's mailbox. Messages which are already
+     * waiting are merged with the new ones, so sending never blocks, never
+     * allocates and never fails. Safe to call from any thread.
+     * @param i index of the receiving agent
+     * @param messages bitset of the message types sent
+     */
+    protected void sendMail(int i, int messages) {
+        int pending = mail.get(i);
+
+        while ((pending & messages) != messages) {
+            if (mail.compareAndSet(i, pending, pending | messages)) return;
+            pending = mail.get(i);
+        }
+    }
+
+    /**
+     * Empties an agent's mailbox
+     * @param i index of the agent
+     * @return Bitset of the message types which were waiting
+     */
+    protected int takeMail(int i) {
+        return mail.get(i) == 0 ? 0 : mail.getAndSet(i, 0);
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Bitset of the message types waiting for the agent
+     */
+    public int getMail(int i) {
+        return mail.get(i);
+    }
+
+    /**
+     * Writes every column of the store to a snapshot, one column at a time
+     * @param out snapshot being written
+     * @throws IOException If the snapshot cannot be written
+     */
+    protected void write(SnapshotWriter out) throws IOException {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) out.putDouble(x[i]);
+        for (int i = 0; i < size; i++) out.putDouble(y[i]);
+        for (int i = 0; i < size; i++) out.putDouble(direction[i]);
+        for (int i = 0; i < size; i++) out.put(state[i]);
+        for (int i = 0; i < size; i++) out.putInt(dueDay[i]);
+        for (int i = 0; i < size; i++) out.putInt(id[i]);
+        for (int i = 0; i < size; i++) out.putLong(rng[i]);
+        for (int i = 0; i < size; i++) out.putInt(mail.get(i));
+    }
+
+    /**
+     * Replaces every column of the store with the columns of a snapshot.
+     * The snapshot must hold as many agents as the store.
+     * @param in snapshot being read
+     * @throws IOException If the snapshot cannot be read, or holds a
+     * different amount of agents
+     */
+    protected void read(SnapshotReader in) throws IOException {
+        if (in.getInt() != size) {
+            throw new IOException("Snapshot population does not match");
+        }
+
+        own(ALL);
+
+        for (int i = 0; i < size; i++) x[i] = in.getDouble();
+        for (int i = 0; i < size; i++) y[i] = in.getDouble();
+        for (int i = 0; i < size; i++) direction[i] = in.getDouble();
+        for (int i = 0; i < size; i++) state[i] = in.get();
+        for (int i = 0; i < size; i++) dueDay[i] = in.getInt();
+        for (int i = 0; i < size; i++) id[i] = in.getInt();
+        for (int i = 0; i < size; i++) rng[i] = in.getLong();
+        for (int i = 0; i < size; i++) mail.set(i, in.getInt());
+    }
+
+    /**
+     * @return Amount of agents in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of the agent
+     * @return x coordinate of the agent's current position
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @return y coordinate of the agent's current position
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Ordinal of the agent's current Agent.State
+     */
+    public byte getState(int i) {
+        return state[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @param state new state of the agent
+     */
+    protected void setState(int i, Agent.State state) {
+        this.state[i] = (byte) state.ordinal();
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Day whose spread phase ends the agent's incubation or illness
+     * period, or ProgressionCalendar.NONE if it is in neither
+     */
+    public int getDueDay(int i) {
+        return dueDay[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @param dueDay day the agent's current period ends, or
+     *               ProgressionCalendar.NONE
+     */
+    protected void setDueDay(int i, int dueDay) {
+        this.dueDay[i] = dueDay;
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Unique integer ID of the agent
+     */
+    public int getId(int i) {
+        return id[i];
+    }
+}
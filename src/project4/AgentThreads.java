@@ -0,0 +1,98 @@
+package project4;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs every agent as an actor on its own thread, either a platform thread
+ * or a virtual thread. The actors do not sleep between ticks. Instead they
+ * park on a shared tick signal, a tree of Phaser objects whose root is
+ * advanced by the engine's driver, so that the actors run the phases of a
+ * tick together and use no CPU in between. Virtual threads need a Java 21
+ * or newer runtime. The project compiles for Java 17, so on an older
+ * runtime the virtual mode prints a warning and runs platform threads.
+ */
+public class AgentThreads {
+    private final Phaser root;
+    private static final int AGENTS_PER_PHASER = 1024;
+
+    /**
+     * Registers the agents with a new tick signal and starts a thread for
+     * each of them. The threads wait for the first tick to be released.
+     * @param agents agents to be run as actors
+     * @param virtual True to use virtual threads, false for platform threads
+     */
+    public AgentThreads(List<Agent> agents, boolean virtual) {
+        root = new Phaser(1);
+        ThreadFactory factory = virtual ? virtualThreadFactory() : null;
+
+        if (factory == null) {
+            if (virtual) {
+                System.err.println("WARNING: execution virtual needs Java " +
+                        "21 or newer, but this JVM is Java " +
+                        Runtime.version().feature() + ". Running " +
+                        agents.size() + " agents on platform threads " +
+                        "instead, one OS thread each.");
+            }
+
+            factory = r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+
+        Phaser leaf = null;
+
+        for (int i = 0; i < agents.size(); i++) {
+            if (i % AGENTS_PER_PHASER == 0) leaf = new Phaser(root);
+            leaf.register();
+            agents.get(i).setPhaser(leaf);
+        }
+
+        for (Agent agent : agents) {
+            factory.newThread(agent).start();
+        }
+    }
+
+    /**
+     * Lets every actor run the next phase of the tick, then waits until all
+     * of them have finished it. Called by the engine only.
+     */
+    protected void advance() {
+        root.arriveAndAwaitAdvance();
+    }
+
+    /**
+     * Terminates the tick signal, which makes every actor thread return
+     */
+    protected void shutdown() {
+        root.forceTermination();
+    }
+
+    /**
+     * @return True if the running JVM supports virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        return virtualThreadFactory() != null;
+    }
+
+    /**
+     * Looks up Thread.ofVirtual() reflectively, since this project still
+     * compiles for Java 17
+     * @return Factory creating virtual threads, or null if the running JVM
+     * does not support them
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Method factory = builder.getMethod("factory");
+            return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+        } catch (ReflectiveOperationException exc) {
+            return null;
+        }
+    }
+}
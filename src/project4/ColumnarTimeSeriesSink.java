@@ -0,0 +1,146 @@
+package project4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the per-day time series in a compact binary columnar format.
+ * After a header holding the magic number, the version and the names of
+ * the columns, the rows are stored in blocks of up to BLOCK_ROWS days.
+ * Each block is the amount of rows in it followed by every column of the
+ * block in turn, each value a little-endian int, so a tool plotting one
+ * curve only has to read that column of each block. Rows are collected in
+ * memory until a block is full or the sink is flushed, and a flush writes
+ * the rows collected so far as a shorter block. Use TimeSeriesReader to
+ * read the file back.
+ */
+public class ColumnarTimeSeriesSink implements TimeSeriesSink {
+    /** Magic number at the start of every time series file, "DSTS" */
+    public static final int MAGIC = 0x53545344;
+    /** Version of the file layout */
+    public static final short VERSION = 1;
+    /** Largest amount of rows in one block */
+    public static final int BLOCK_ROWS = 1024;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int[][] block = new int[COLUMNS.size()][BLOCK_ROWS];
+    private int rows = 0;
+
+    /**
+     * Creates a new time series file, replacing any existing file, and
+     * writes its header
+     * @param file file to be written to
+     * @throws IOException If the file cannot be created or written to
+     */
+    public ColumnarTimeSeriesSink(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) COLUMNS.size());
+
+        for (String column : COLUMNS) {
+            buffer.putShort((short) column.length());
+
+            for (int i = 0; i < column.length(); i++) {
+                buffer.put((byte) column.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the row of one day to the current block, writing the block out
+     * once it is full
+     * @param day number of the day which has just ended
+     * @param counts amount of agents in each state, indexed by ordinal
+     * @param newInfections amount of agents infected during the day
+     * @param deaths amount of agents which died during the day
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void writeDay(int day, long[] counts, long newInfections,
+                         long deaths) throws IOException {
+        int column = 0;
+        block[column++][rows] = day;
+
+        for (int s = 0; s < Agent.State.values().length; s++) {
+            block[column++][rows] = (int) counts[s];
+        }
+
+        block[column++][rows] = (int) newInfections;
+        block[column][rows] = (int) deaths;
+        if (++rows == BLOCK_ROWS) writeBlock();
+    }
+
+    /**
+     * Writes the rows collected so far as a block, if there are any
+     * @throws IOException If the file cannot be written to
+     */
+    private void writeBlock() throws IOException {
+        if (rows == 0) return;
+        ensure(Integer.BYTES);
+        buffer.putInt(rows);
+
+        for (int[] values : block) {
+            for (int r = 0; r < rows; r++) {
+                ensure(Integer.BYTES);
+                buffer.putInt(values[r]);
+            }
+        }
+
+        rows = 0;
+    }
+
+    /**
+     * Makes sure the buffer has room for the given amount of bytes, writing
+     * the buffered bytes to the file if needed
+     * @param bytes amount of bytes about to be put
+     * @throws IOException If the file cannot be written to
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flushBuffer();
+    }
+
+    /**
+     * Writes the buffered bytes to the file
+     * @throws IOException If the file cannot be written to
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the rows collected so far as a block, then writes every
+     * buffered byte to the file
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        flushBuffer();
+    }
+
+    /**
+     * Writes the remaining rows and closes the file
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package project4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the per-day time series as CSV, one line per day after a header
+ * line naming the columns. Lines are encoded into a direct buffer which is
+ * written through a FileChannel whenever it fills up or the sink is
+ * flushed, so the sink never holds more than one buffer in memory.
+ */
+public class CsvTimeSeriesSink implements TimeSeriesSink {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates a new CSV file, replacing any existing file, and writes the
+     * header line
+     * @param file file to be written to
+     * @throws IOException If the file cannot be created or written to
+     */
+    public CsvTimeSeriesSink(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        line.append(String.join(",", COLUMNS));
+        putLine();
+    }
+
+    /**
+     * Appends the line of one day
+     * @param day number of the day which has just ended
+     * @param counts amount of agents in each state, indexed by ordinal
+     * @param newInfections amount of agents infected during the day
+     * @param deaths amount of agents which died during the day
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void writeDay(int day, long[] counts, long newInfections,
+                         long deaths) throws IOException {
+        line.append(day);
+
+        for (int s = 0; s < Agent.State.values().length; s++) {
+            line.append(',').append(counts[s]);
+        }
+
+        line.append(',').append(newInfections).append(',').append(deaths);
+        putLine();
+    }
+
+    /**
+     * Encodes the current line and a line break into the buffer, then
+     * empties the line. Every character of a line is ASCII.
+     * @throws IOException If the file cannot be written to
+     */
+    private void putLine() throws IOException {
+        line.append('\n');
+        if (buffer.remaining() < line.length()) flush();
+
+        for (int i = 0; i < line.length(); i++) {
+            buffer.put((byte) line.charAt(i));
+        }
+
+        line.setLength(0);
+    }
+
+    /**
+     * Writes the buffered lines to the file
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining lines and closes the file
+     * @throws IOException If the file cannot be written to
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package project4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a simulation split over several TileWorker processes on this
+ * machine, connected by loopback sockets. The simulation area is split
+ * into --tiles vertical strips, and one worker process is launched per
+ * strip with the same config file and seed. This runner tells each worker
+ * where to find the worker of the strip to its right, then collects the
+ * counts of every strip at the end of each day and stops the workers once
+ * every strip is settled. The final counts are printed as by the
+ * HeadlessRunner, along with the amount of agents each strip ended with.
+ * The strips must be at least as wide as the exposure distance. Each
+ * worker builds only the agents of its own strip, so --heap can give each
+ * worker a maximum heap size for populations too large for one process.
+ * With --check the same config and seed are then run headless in this
+ * process: on one tile the run must match it exactly, and on more tiles
+ * its counts are printed for reference. Usage:
+ * <pre>java project4.DistributedRunner [--tiles n] [--threads n]
+ *     [--seed n] [--heap size] [--check] config</pre>
+ */
+public class DistributedRunner {
+    private static final Agent.State[] STATES = Agent.State.values();
+    private static final int ACCEPT_TIMEOUT = 1000;
+
+    /**
+     * Entry point of the distributed mode
+     * @param args Command line arguments from the user. The first argument
+     *             which is not an option is the config file to be loaded.
+     */
+    public static void main(String[] args) {
+        int tiles = 2;
+        int threads = 0;
+        Long seed = null;
+        String heap = null;
+        boolean check = false;
+        String configFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--distributed" -> {
+                        //do nothing
+                    }
+                    case "--tiles" -> tiles = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    case "--heap" -> heap = args[++i];
+                    case "--check" -> check = true;
+                    default -> {
+                        if (configFile == null) configFile = args[i];
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exc) {
+            System.err.println("Invalid command line options");
+            System.exit(1);
+        }
+
+        tiles = Math.max(1, tiles);
+        if (threads < 1) {
+            threads = Math.max(1,
+                    Runtime.getRuntime().availableProcessors() / tiles);
+        }
+
+        Map<String, Double> params = new HashMap<>();
+        Long configSeed = null;
+
+        if (configFile != null) {
+            try {
+                params = FileIO.loadDiseaseParams(new File(configFile));
+                configSeed = FileIO.loadSeed(new File(configFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to read config file " + configFile);
+                System.exit(1);
+            }
+        }
+
+        if (seed == null) {
+            seed = configSeed != null ? configSeed :
+                    SplitMix64.mix(System.nanoTime());
+        }
+
+        List<Process> workers = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, tiles,
+                InetAddress.getLoopbackAddress())) {
+            for (int k = 0; k < tiles; k++) {
+                workers.add(launch(server.getLocalPort(), k, tiles, threads,
+                        seed, heap, configFile));
+            }
+
+            long startTime = System.nanoTime();
+            Result result = coordinate(server, workers);
+            long elapsed = System.nanoTime() - startTime;
+
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+
+            long agents = 0;
+            for (int count : result.agents()) agents += count;
+
+            System.out.println("Seed: " + seed);
+            System.out.println("Agents: " + agents);
+
+            for (Agent.State state : STATES) {
+                System.out.println(state + ": " +
+                        result.counts()[state.ordinal()]);
+            }
+
+            for (int k = 0; k < tiles; k++) {
+                System.out.println("Tile " + k + ": " + result.agents()[k] +
+                        " agents");
+            }
+
+            System.out.printf("Finished after %d days in %.3f seconds on %d " +
+                    "tiles%n", result.day(), elapsed / 1e9, tiles);
+
+            if (check && !check(params, seed, threads, result, tiles == 1)) {
+                System.exit(1);
+            }
+        } catch (IOException exc) {
+            System.err.println("Distributed run failed: " + exc.getMessage());
+            workers.forEach(Process::destroy);
+            System.exit(1);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            workers.forEach(Process::destroy);
+        }
+    }
+
+    /**
+     * Final counts of a distributed run
+     * @param day last day run
+     * @param counts amount of agents in each state, over every strip
+     * @param agents amount of agents in each strip
+     */
+    private record Result(int day, long[] counts, int[] agents) {}
+
+    /**
+     * Runs the same config and seed headless in this process and compares
+     * its final day and counts with those of the distributed run
+     * @param params parameters of the config file
+     * @param seed seed shared by every worker
+     * @param threads worker threads of the headless engine
+     * @param result final counts of the distributed run
+     * @param exact whether the runs must match, as they do on one tile
+     * @return False if the runs had to match but did not
+     */
+    private static boolean check(Map<String, Double> params, long seed,
+                                 int threads, Result result, boolean exact) {
+        Map<String, Double> headlessParams = new HashMap<>(params);
+        headlessParams.remove("execution");
+        SimulationEngine engine = new SimulationEngine(threads);
+        engine.setParams(headlessParams);
+        engine.setSeed(seed);
+        engine.init();
+        engine.runToCompletion();
+
+        boolean match = engine.getDay() == result.day();
+        StringBuilder counts = new StringBuilder();
+
+        for (Agent.State state : STATES) {
+            long count = engine.getCount(state);
+            match &= count == result.counts()[state.ordinal()];
+            counts.append(' ').append(state).append(": ").append(count);
+        }
+
+        engine.shutdown();
+        System.out.println("Headless:" + counts + " after " +
+                engine.getDay() + " days");
+
+        if (exact && !match) {
+            System.err.println("Check failed: one tile does not match the " +
+                    "headless run");
+            return false;
+        }
+
+        if (exact) System.out.println("Check passed");
+        return true;
+    }
+
+    /**
+     * Starts a worker process on the same Java runtime and class path as
+     * this process. Its output is passed through to this process.
+     * @param port port of this runner
+     * @param tile index of the worker's strip
+     * @param tiles amount of strips
+     * @param threads worker threads of the worker's engine
+     * @param seed seed shared by every worker
+     * @param heap maximum heap size of the worker, or null for the default
+     * @param configFile config file, or null
+     * @return The started process
+     * @throws IOException If the process cannot be started
+     */
+    private static Process launch(int port, int tile, int tiles, int threads,
+                                  long seed, String heap, String configFile)
+            throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java")
+                        .toString()));
+        if (heap != null) command.add("-Xmx" + heap);
+        command.addAll(List.of(
+                "-cp", System.getProperty("java.class.path"),
+                TileWorker.class.getName(),
+                "--coordinator", Integer.toString(port),
+                "--tile", Integer.toString(tile),
+                "--tiles", Integer.toString(tiles),
+                "--threads", Integer.toString(threads),
+                "--seed", Long.toString(seed)));
+        if (configFile != null) command.add(configFile);
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Accepts a connection from every worker, tells each one the port of
+     * the worker to its right, then runs one day at a time until every
+     * strip is settled
+     * @param server socket the workers connect to
+     * @param workers worker processes, in strip order
+     * @return The final counts over every strip
+     * @throws IOException If a worker fails or disconnects
+     */
+    private static Result coordinate(ServerSocket server,
+                                     List<Process> workers)
+            throws IOException {
+        int tiles = workers.size();
+        Socket[] sockets = new Socket[tiles];
+        DataInputStream[] in = new DataInputStream[tiles];
+        DataOutputStream[] out = new DataOutputStream[tiles];
+        int[] ports = new int[tiles];
+
+        try {
+            server.setSoTimeout(ACCEPT_TIMEOUT);
+
+            for (int n = 0; n < tiles; n++) {
+                Socket socket = accept(server, workers);
+                DataInputStream input = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream()));
+                int tile = input.readInt();
+                sockets[tile] = socket;
+                in[tile] = input;
+                out[tile] = new DataOutputStream(new BufferedOutputStream(
+                        socket.getOutputStream()));
+                ports[tile] = input.readInt();
+            }
+
+            for (int k = 0; k < tiles; k++) {
+                out[k].writeInt(k + 1 < tiles ? ports[k + 1] : -1);
+                out[k].flush();
+            }
+
+            long[] counts = new long[STATES.length];
+            int[] agents = new int[tiles];
+
+            while (true) {
+                boolean settled = true;
+                int day = 0;
+                Arrays.fill(counts, 0);
+
+                for (int k = 0; k < tiles; k++) {
+                    day = in[k].readInt();
+                    agents[k] = in[k].readInt();
+
+                    for (int s = 0; s < counts.length; s++) {
+                        counts[s] += in[k].readLong();
+                    }
+
+                    settled &= in[k].readBoolean();
+                }
+
+                for (int k = 0; k < tiles; k++) {
+                    out[k].writeBoolean(!settled);
+                    out[k].flush();
+                }
+
+                if (settled) return new Result(day, counts, agents);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) socket.close();
+            }
+        }
+    }
+
+    /**
+     * Waits for the next worker to connect, failing if any worker exits
+     * first, such as when its strip is too narrow
+     * @param server socket the workers connect to
+     * @param workers worker processes
+     * @return Socket of the connected worker
+     * @throws IOException If a worker exited before connecting
+     */
+    private static Socket accept(ServerSocket server, List<Process> workers)
+            throws IOException {
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException exc) {
+                for (Process worker : workers) {
+                    if (!worker.isAlive()) {
+                        throw new IOException("a tile worker exited");
+                    }
+                }
+            }
+        }
+    }
+}
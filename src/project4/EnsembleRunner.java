@@ -0,0 +1,321 @@
+package project4;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent replicas of one parameter set without the GUI and
+ * aggregates their per-day state counts. Every replica is a separate
+ * SimulationEngine ticked on a single thread, with its own seed split from
+ * the base seed, and the replicas are spread over one thread per core, so
+ * throughput grows with the core count. The replicas advance together one
+ * day at a time, and as soon as every replica has passed a day, the mean
+ * and the 5th, 50th and 95th percentiles of each state's count on that day
+ * are written to a CSV file as one row. Only the counts of the current day
+ * are kept, but every replica's engine stays in memory for the whole run.
+ * Replicas which finished early keep their final counts for the remaining
+ * days. Usage:
+ * <pre>java project4.EnsembleRunner [--replicas n] [--threads n]
+ *     [--seed n] [--out file] config</pre>
+ */
+public class EnsembleRunner {
+    private static final Agent.State[] STATES = Agent.State.values();
+    private static final double[] PERCENTILES = {5, 50, 95};
+
+    /**
+     * Entry point of the ensemble mode
+     * @param args Command line arguments from the user. The first argument
+     *             which is not an option is the config file to be loaded.
+     */
+    public static void main(String[] args) {
+        int replicas = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Long baseSeed = null;
+        String outFile = "ensemble.csv";
+        String configFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--ensemble" -> {
+                        //do nothing
+                    }
+                    case "--replicas" -> replicas = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--seed" -> baseSeed = Long.parseLong(args[++i]);
+                    case "--out" -> outFile = args[++i];
+                    default -> {
+                        if (configFile == null) configFile = args[i];
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exc) {
+            System.err.println("Invalid command line options");
+            System.exit(1);
+        }
+
+        Map<String, Double> params = new HashMap<>();
+        Long configSeed = null;
+
+        if (configFile != null) {
+            try {
+                params = FileIO.loadDiseaseParams(new File(configFile));
+                configSeed = FileIO.loadSeed(new File(configFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to read config file " + configFile);
+                System.exit(1);
+            }
+        }
+
+        if (baseSeed == null) {
+            baseSeed = configSeed != null ? configSeed :
+                    SplitMix64.mix(System.nanoTime());
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            run(params, replicas, threads, baseSeed, Paths.get(outFile));
+        } catch (IOException exc) {
+            System.err.println("Unable to write " + outFile);
+            System.exit(1);
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+        System.out.println("Seed: " + baseSeed);
+        System.out.printf("Ran %d replicas in %.3f seconds on %d threads%n",
+                replicas, elapsed / 1e9, threads);
+        System.out.println("Wrote daily bands to " + outFile);
+    }
+
+    /**
+     * Runs the replicas of a parameter set in parallel, one day at a time,
+     * and writes the bands of each day to a CSV file once every replica has
+     * passed it
+     * @param params settings and disease parameters of every replica
+     * @param replicas amount of replicas to be run
+     * @param threads amount of replicas run at the same time
+     * @param baseSeed seed from which the seed of every replica is split
+     * @param path CSV file to be written
+     * @return Amount of days run by the longest replica
+     * @throws IOException If the file cannot be written
+     */
+    public static int run(Map<String, Double> params, int replicas,
+                          int threads, long baseSeed, Path path)
+            throws IOException {
+        SplitMix64 seeds = new SplitMix64(baseSeed);
+        SimulationEngine[] engines = new SimulationEngine[replicas];
+        long[][] counts = new long[replicas][STATES.length];
+        List<Callable<Boolean>> steps = new ArrayList<>(replicas);
+
+        for (int i = 0; i < replicas; i++) {
+            int r = i;
+            long seed = seeds.split();
+            steps.add(() -> {
+                if (engines[r] == null) engines[r] = newReplica(params, seed);
+                else advanceDay(engines[r]);
+                engines[r].getCounters().snapshot(counts[r]);
+                return !engines[r].isSettled();
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, threads), r -> {
+                    Thread thread = new Thread(r, "ensemble-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try (BufferedWriter out = Files.newBufferedWriter(path,
+                StandardCharsets.UTF_8)) {
+            writeHeader(out);
+            long[] values = new long[replicas];
+            StringBuilder line = new StringBuilder();
+            int day = 0;
+            boolean running = runDay(pool, steps);
+            writeDay(out, day, counts, values, line);
+
+            while (running) {
+                running = runDay(pool, steps);
+                writeDay(out, ++day, counts, values, line);
+            }
+
+            return day;
+        } finally {
+            pool.shutdown();
+
+            for (SimulationEngine engine : engines) {
+                if (engine != null) engine.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs one step of every replica on the pool and waits for all of them
+     * @param pool threads running the replicas
+     * @param steps step of each replica
+     * @return True if any replica has not settled yet
+     */
+    private static boolean runDay(ExecutorService pool,
+                                  List<Callable<Boolean>> steps) {
+        boolean running = false;
+
+        try {
+            for (Future<Boolean> future : pool.invokeAll(steps)) {
+                running |= future.get();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ensemble interrupted", exc);
+        } catch (ExecutionException exc) {
+            throw new IllegalStateException("Replica failed", exc.getCause());
+        }
+
+        return running;
+    }
+
+    /**
+     * Builds one replica, ticked on the calling thread
+     * @param params settings and disease parameters of the replica
+     * @param seed seed of the replica
+     * @return The initialized engine of the replica
+     */
+    protected static SimulationEngine newReplica(Map<String, Double> params,
+                                                 long seed) {
+        Map<String, Double> replicaParams = new HashMap<>(params);
+        replicaParams.remove("execution");
+
+        SimulationEngine engine = new SimulationEngine(1);
+        engine.setParams(replicaParams);
+        engine.setSeed(seed);
+        engine.init();
+        return engine;
+    }
+
+    /**
+     * Runs one replica to completion on the calling thread, keeping its
+     * counts of every day, as ParameterSweep does for each of its runs
+     * @param params settings and disease parameters of the replica
+     * @param seed seed of the replica
+     * @return Counts of every state at the start of the run and at the end
+     * of every day, indexed by day then state ordinal
+     */
+    protected static long[][] runReplica(Map<String, Double> params,
+                                         long seed) {
+        SimulationEngine engine = newReplica(params, seed);
+        List<long[]> days = new ArrayList<>();
+
+        try {
+            while (true) {
+                long[] counts = new long[STATES.length];
+                engine.getCounters().snapshot(counts);
+                days.add(counts);
+                if (engine.isSettled()) break;
+                advanceDay(engine);
+            }
+        } finally {
+            engine.shutdown();
+        }
+
+        return days.toArray(new long[0][]);
+    }
+
+    /**
+     * Ticks a replica until the end of its current day, unless it has
+     * settled. A replica which has not settled always reaches the end of
+     * the day, since agents only change state on the tick ending a day.
+     * @param engine engine of the replica
+     */
+    protected static void advanceDay(SimulationEngine engine) {
+        int day = engine.getDay();
+
+        while (!engine.isSettled() && engine.getDay() == day) {
+            engine.tick();
+        }
+    }
+
+    /**
+     * Writes the header line of the CSV file
+     * @param out writer of the CSV file
+     * @throws IOException If the file cannot be written
+     */
+    private static void writeHeader(BufferedWriter out) throws IOException {
+        StringBuilder line = new StringBuilder("day");
+
+        for (Agent.State state : STATES) {
+            line.append(',').append(state).append("_mean");
+
+            for (double percentile : PERCENTILES) {
+                line.append(',').append(state).append("_p")
+                        .append((int) percentile);
+            }
+        }
+
+        out.write(line.toString());
+        out.newLine();
+    }
+
+    /**
+     * Writes the mean and percentile bands of every state on one day
+     * @param out writer of the CSV file
+     * @param day number of the day
+     * @param counts counts of every replica at the end of the day, indexed
+     *               by replica then state ordinal
+     * @param values scratch array with one entry per replica
+     * @param line scratch line
+     * @throws IOException If the file cannot be written
+     */
+    private static void writeDay(BufferedWriter out, int day, long[][] counts,
+                                 long[] values, StringBuilder line)
+            throws IOException {
+        line.setLength(0);
+        line.append(day);
+
+        for (int s = 0; s < STATES.length; s++) {
+            double sum = 0;
+
+            for (int r = 0; r < values.length; r++) {
+                values[r] = counts[r][s];
+                sum += values[r];
+            }
+
+            Arrays.sort(values);
+            line.append(',').append(String.format(Locale.ROOT, "%.3f",
+                    sum / values.length));
+
+            for (double percentile : PERCENTILES) {
+                line.append(',').append(percentile(values, percentile));
+            }
+        }
+
+        out.write(line.toString());
+        out.newLine();
+    }
+
+    /**
+     * @param sorted values sorted in ascending order
+     * @param percentile percentile between 0 and 100
+     * @return Nearest-rank percentile of the values
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
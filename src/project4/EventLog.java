@@ -0,0 +1,191 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only binary log of every agent state transition. Each transition
+ * is written as a fixed-width little-endian record holding the tick, the
+ * agent ID, the old state and the new state. Worker threads claim record
+ * slots in the current segment of the log with an atomic counter, so
+ * recording never takes a lock, and the thread which overruns a full
+ * segment swaps in a fresh one. Full segments are written through a
+ * FileChannel at the end of the next day, when no worker thread is
+ * recording, so the log only holds the segments of one day in memory. An
+ * error writing the file stops the log, and is thrown by close rather
+ * than from a worker thread. Use EventLogReader to stream a log back.
+ */
+public class EventLog implements SimulationListener, Closeable {
+    /** Magic number at the start of every log file, "DSEV" */
+    public static final int MAGIC = 0x56455344;
+    /** Version of the record layout */
+    public static final short VERSION = 2;
+    /** Size of the file header in bytes */
+    public static final int HEADER_SIZE = 8;
+    /** Size of each record in bytes: tick, agent, from, to, padding */
+    public static final int RECORD_SIZE = 16;
+    private static final int SEGMENT_RECORDS = 8192;
+    private final SimulationEngine engine;
+    private final FileChannel channel;
+    private final AtomicReference<Segment> current =
+            new AtomicReference<>(new Segment());
+    private final Queue<Segment> full = new ConcurrentLinkedQueue<>();
+    private final Queue<Segment> spare = new ConcurrentLinkedQueue<>();
+    private final LongAdder records = new LongAdder();
+    private volatile boolean closed = false;
+    private IOException error;
+
+    /**
+     * Part of the log held in memory. Each record slot is claimed by one
+     * thread, which then writes the record at the slot's absolute position.
+     */
+    private static final class Segment {
+        private final ByteBuffer buffer = ByteBuffer
+                .allocateDirect(RECORD_SIZE * SEGMENT_RECORDS)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private final AtomicInteger claimed = new AtomicInteger();
+    }
+
+    /**
+     * Creates a new log file, replacing any existing file, and starts
+     * recording the transitions of the given engine
+     * @param file file to be written to
+     * @param engine engine whose transitions are logged
+     * @throws IOException If the file cannot be created or written to
+     */
+    public EventLog(Path file, SimulationEngine engine) throws IOException {
+        this.engine = engine;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+        engine.addListener(this);
+    }
+
+    /**
+     * Appends a record for the transition. Called by the engine from its
+     * worker threads.
+     * @param agentNum ID of the agent which changed state
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     */
+    @Override
+    public void stateChanged(int agentNum, Agent.State from,
+                             Agent.State to) {
+        if (closed) return;
+        long tick = engine.getTick();
+
+        while (true) {
+            Segment segment = current.get();
+            int slot = segment.claimed.getAndIncrement();
+
+            if (slot < SEGMENT_RECORDS) {
+                ByteBuffer buffer = segment.buffer;
+                int at = slot * RECORD_SIZE;
+                buffer.putLong(at, tick);
+                buffer.putInt(at + 8, agentNum);
+                buffer.put(at + 12, (byte) from.ordinal());
+                buffer.put(at + 13, (byte) to.ordinal());
+                buffer.putShort(at + 14, (short) 0);
+                records.increment();
+                return;
+            }
+
+            Segment next = spare.poll();
+            if (next == null) next = new Segment();
+
+            if (current.compareAndSet(segment, next)) full.add(segment);
+            else spare.add(next);
+        }
+    }
+
+    /**
+     * Writes the segments filled during the day. Called by the engine at
+     * the end of the tick, once every worker thread has finished it.
+     * @param day Number of days elapsed since the simulation started
+     */
+    @Override
+    public synchronized void dayElapsed(int day) {
+        writeFull();
+    }
+
+    /**
+     * Writes every full segment to the file and keeps them for reuse
+     */
+    private void writeFull() {
+        Segment segment;
+
+        while ((segment = full.poll()) != null) {
+            write(segment, SEGMENT_RECORDS);
+        }
+    }
+
+    /**
+     * Writes the first records of a segment to the file, unless writing
+     * has already failed, then empties the segment and keeps it for reuse.
+     * The first error is kept to be thrown by close.
+     * @param segment segment to be written
+     * @param count amount of records written into the segment
+     */
+    private void write(Segment segment, int count) {
+        ByteBuffer buffer = segment.buffer;
+        buffer.clear().limit(count * RECORD_SIZE);
+
+        try {
+            if (error == null) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        } catch (IOException exc) {
+            error = exc;
+        }
+
+        buffer.clear();
+        segment.claimed.set(0);
+        spare.add(segment);
+    }
+
+    /**
+     * @return Amount of records appended so far
+     */
+    public long getRecords() {
+        return records.sum();
+    }
+
+    /**
+     * Writes the remaining records and closes the file. Must not be called
+     * while the engine is running a tick.
+     * @throws IOException If the file could not be written to, either now
+     * or by an earlier write
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        closed = true;
+
+        try {
+            writeFull();
+            Segment segment = current.get();
+            write(segment, Math.min(segment.claimed.get(), SEGMENT_RECORDS));
+        } finally {
+            channel.close();
+        }
+
+        if (error != null) throw error;
+    }
+}
@@ -0,0 +1,163 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the records of an EventLog file back one at a time. Only a fixed
+ * size buffer of the file is held in memory, so logs of any length can be
+ * read. Logs of the first version, whose ticks were ints, can still be
+ * read. The reader is a cursor: call next to move to the following record,
+ * then read its fields with the getters. Usage as a converter to CSV:
+ * <pre>java project4.EventLogReader events.bin</pre>
+ */
+public class EventLogReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int recordSize;
+    private long tick;
+    private int agentNum;
+    private Agent.State from;
+    private Agent.State to;
+    private static final Agent.State[] STATES = Agent.State.values();
+
+    /**
+     * Opens a log file and checks its header
+     * @param file log file to be read
+     * @throws IOException If the file cannot be read, or is not an event log
+     */
+    public EventLogReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(EventLog.RECORD_SIZE * 8192)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(0);
+
+        if (!fill(EventLog.HEADER_SIZE) ||
+                buffer.getInt() != EventLog.MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not an event log");
+        }
+
+        short version = buffer.getShort();
+        recordSize = buffer.getShort();
+
+        if (version == EventLog.VERSION ?
+                recordSize != EventLog.RECORD_SIZE :
+                version != 1 || recordSize != 12) {
+            channel.close();
+            throw new IOException(file + " has an unknown record layout");
+        }
+    }
+
+    /**
+     * Moves to the next record
+     * @return True if there was another record, false at the end of the log
+     * @throws IOException If the file cannot be read, or ends part way
+     * through a record
+     */
+    public boolean next() throws IOException {
+        if (!fill(recordSize)) return false;
+
+        tick = recordSize == EventLog.RECORD_SIZE ? buffer.getLong() :
+                buffer.getInt();
+        agentNum = buffer.getInt();
+        from = STATES[buffer.get()];
+        to = STATES[buffer.get()];
+        buffer.getShort();
+        return true;
+    }
+
+    /**
+     * Makes sure that the buffer holds at least the given amount of bytes,
+     * reading more of the file if needed
+     * @param bytes amount of bytes needed
+     * @return False if the file ended before any of the bytes were read
+     * @throws IOException If the file cannot be read, or ends after only
+     * some of the bytes
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return true;
+
+        buffer.compact();
+
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                boolean empty = buffer.position() == 0;
+                buffer.flip();
+                if (empty) return false;
+                throw new EOFException("Truncated event log");
+            }
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * @return Tick during which the current record's transition occurred
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return ID of the agent which changed state
+     */
+    public int getAgentNum() {
+        return agentNum;
+    }
+
+    /**
+     * @return State the agent was in before the change
+     */
+    public Agent.State getFrom() {
+        return from;
+    }
+
+    /**
+     * @return State the agent is in after the change
+     */
+    public Agent.State getTo() {
+        return to;
+    }
+
+    /**
+     * Closes the log file
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints every record of a log file as CSV
+     * @param args path of the log file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java project4.EventLogReader file");
+            System.exit(1);
+        }
+
+        try (EventLogReader reader = new EventLogReader(Paths.get(args[0]))) {
+            System.out.println("tick,agent,from,to");
+
+            while (reader.next()) {
+                System.out.println(reader.getTick() + "," +
+                        reader.getAgentNum() + "," + reader.getFrom() + "," +
+                        reader.getTo());
+            }
+        } catch (IOException exc) {
+            System.err.println(exc.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package project4;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the execution modes of the engine on the same population. For
+ * each mode a randomly placed population is built, ticked a fixed amount of
+ * times without any delay, and the time taken and the peak amount of live
+ * JVM threads are printed. The platform thread mode is the original design,
+ * where every agent has its own OS thread. The virtual thread mode is
+ * skipped on runtimes older than Java 21, rather than timing platform
+ * threads a second time. Usage:
+ * <pre>java project4.ExecutionModeComparison [agents] [ticks]</pre>
+ */
+public class ExecutionModeComparison {
+    /**
+     * Entry point of the comparison
+     * @param args optional amount of agents (default 10000) and amount of
+     *             ticks (default 100)
+     */
+    public static void main(String[] args) {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String[] names = {"pool", "platform", "virtual"};
+
+        System.out.printf("%d agents, %d ticks%n", agents, ticks);
+        System.out.printf("%-10s %12s %14s %13s%n", "mode", "time (ms)",
+                "agent-ticks/s", "peak threads");
+
+        for (int mode = 0; mode < names.length; mode++) {
+            if (mode == 2 && !AgentThreads.virtualThreadsSupported()) {
+                System.out.printf("%-10s skipped: needs Java 21 or newer, " +
+                        "running on Java %d%n", names[mode],
+                        Runtime.version().feature());
+                continue;
+            }
+
+            run(names[mode], mode, agents, ticks);
+        }
+    }
+
+    /**
+     * Runs the population in one execution mode and prints the results
+     * @param name name of the execution mode
+     * @param mode value of the execution config key for the mode
+     * @param agents amount of agents in the population
+     * @param ticks amount of ticks to be run
+     */
+    private static void run(String name, int mode, int agents, int ticks) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Double> params = new HashMap<>();
+        params.put("initmode", 1.0);
+        params.put("random", (double) agents);
+        params.put("execution", (double) mode);
+
+        SimulationEngine engine = new SimulationEngine();
+        engine.setParams(params);
+
+        try {
+            threads.resetPeakThreadCount();
+            long startTime = System.nanoTime();
+            engine.init();
+
+            for (int i = 0; i < ticks; i++) {
+                engine.tick();
+            }
+
+            long elapsed = System.nanoTime() - startTime;
+            System.out.printf("%-10s %12.1f %14.0f %13d%n", name,
+                    elapsed / 1e6, (double) agents * ticks / (elapsed / 1e9),
+                    threads.getPeakThreadCount());
+        } catch (OutOfMemoryError exc) {
+            System.out.printf("%-10s failed: %s%n", name, exc.getMessage());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -46,7 +46,8 @@ public class FileIO {
             String[] arr = line.split(" ");
 
             if (arr.length == 2) {
-                if (arr[0].length() > arr[1].length()) {
+                if (arr[0].length() > arr[1].length() &&
+                        !arr[0].equalsIgnoreCase("seed")) {
                     try {
                         double value = Double.parseDouble(arr[1]);
                         diseaseParams.put(arr[0], value);
@@ -57,7 +58,15 @@ public class FileIO {
                     } catch (NumberFormatException exc) {
                         if (arr[0].equalsIgnoreCase("move") &&
                                 arr[1].equalsIgnoreCase("off")) {
-                            diseaseParams.put(arr[1], (double)-1);
+                            diseaseParams.put("move", (double)-1);
+                        } else if (arr[0].equalsIgnoreCase("execution")) {
+                            switch (arr[1].toLowerCase()) {
+                                case "pool" -> diseaseParams.put(arr[0], 0.0);
+                                case "platform" ->
+                                        diseaseParams.put(arr[0], 1.0);
+                                case "virtual" ->
+                                        diseaseParams.put(arr[0], 2.0);
+                            }
                         }
                     }
                 }
@@ -91,20 +100,33 @@ public class FileIO {
 
         return diseaseParams;
     }
-}
 
-//    public static void saveGameState(Agent[][] grid, String fileName) throws IOException {
-//        StringBuilder gridState = new StringBuilder();
-//        for (int i = 0; i < grid.length; i++) {
-//            for (int j = 0; j < grid.length; j++) {
-//                gridState.append(grid[i][j].toString());
-//                if(j != grid.length-1) gridState.append(",");
-//            }
-//            gridState.append("\n");
-//        }
-//        File saveFile = new File(fileName);
-//        FileWriter fw = new FileWriter(saveFile);
-//
-//        fw.append(gridState);
-//        fw.close();
-//    }
\ No newline at end of file
+    /**
+     * Loads the seed found in the specified load file. The seed is read
+     * as a long rather than with the disease parameters, since a double
+     * would round seeds above 2^53 and the run could not be reproduced.
+     * @param loadFile File in which the parameters are stored
+     * @return Seed found in the load file, or null if it has none
+     * @throws IOException If the file does not exist, or cannot be read
+     */
+    public static Long loadSeed(File loadFile) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(loadFile));
+        Long seed = null;
+        String line;
+
+        while ((line = br.readLine()) != null) {
+            String[] arr = line.split(" ");
+
+            if (arr.length == 2 && arr[0].equalsIgnoreCase("seed")) {
+                try {
+                    seed = Long.parseLong(arr[1]);
+                } catch (NumberFormatException exc) {
+                    //do nothing
+                }
+            }
+        }
+        br.close();
+
+        return seed;
+    }
+}
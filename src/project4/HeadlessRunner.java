@@ -0,0 +1,232 @@
+package project4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import javax.management.JMException;
+
+/**
+ * Runs a simulation without the GUI. The config file given on the command
+ * line is loaded, then the simulation is stepped as fast as possible until
+ * the disease can no longer spread, and the final counts are printed. This
+ * class does not depend on JavaFX, so it can be run directly on machines
+ * which do not have it installed. The --threads option sets the amount of
+ * worker threads, and runs with the same seed on 1 thread are identical.
+ * The --events option records every transition into an EventLog file.
+ * The --checkpoint option saves a snapshot of the simulation every
+ * --checkpoint-days days (default 10) and at the end of the run, and the
+ * --resume option continues a run from a snapshot instead of building new
+ * agents. When resuming, the disease parameters of the config file, if
+ * any, replace the saved ones, so what-if runs can be forked from one
+ * snapshot. The --telemetry option appends the phase timings, throughput,
+ * inbox depths and JVM allocation and GC counters to a CSV file every
+ * --telemetry-interval milliseconds (default 1000), and registers them as
+ * the project4:type=Telemetry MBean for the length of the run. The
+ * --series option streams one row per day, with the count of every state
+ * and the new infections and deaths of the day, to a CSV file if its name
+ * ends in .csv and to a binary columnar file otherwise, flushed at most
+ * every --series-flush milliseconds (default 1000).
+ */
+public class HeadlessRunner {
+    /**
+     * Entry point of the headless mode
+     * @param args Command line arguments from the user. The first argument
+     *             which is not an option is the config file to be loaded.
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String configFile = null;
+        String eventFile = null;
+        String checkpointFile = null;
+        String resumeFile = null;
+        String telemetryFile = null;
+        String seriesFile = null;
+        int checkpointDays = 10;
+        long telemetryInterval = 1000;
+        long seriesFlush = 1000;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--headless" -> {
+                        //do nothing
+                    }
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--events" -> eventFile = args[++i];
+                    case "--checkpoint" -> checkpointFile = args[++i];
+                    case "--checkpoint-days" ->
+                            checkpointDays = Integer.parseInt(args[++i]);
+                    case "--resume" -> resumeFile = args[++i];
+                    case "--telemetry" -> telemetryFile = args[++i];
+                    case "--telemetry-interval" ->
+                            telemetryInterval = Long.parseLong(args[++i]);
+                    case "--series" -> seriesFile = args[++i];
+                    case "--series-flush" ->
+                            seriesFlush = Long.parseLong(args[++i]);
+                    default -> {
+                        if (configFile == null) configFile = args[i];
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exc) {
+            System.err.println("Invalid command line options");
+            System.exit(1);
+        }
+
+        SimulationEngine engine = new SimulationEngine(threads);
+        Map<String, Double> params = null;
+        Long seed = null;
+
+        if (configFile != null) {
+            try {
+                params = FileIO.loadDiseaseParams(new File(configFile));
+                seed = FileIO.loadSeed(new File(configFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to read config file " + configFile);
+                System.exit(1);
+            }
+        }
+
+        if (resumeFile != null) {
+            try {
+                engine.restore(Paths.get(resumeFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to resume from " + resumeFile +
+                        ": " + exc.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (params != null) engine.setParams(params);
+        if (seed != null) engine.setSeed(seed);
+
+        if (checkpointFile != null) {
+            Path checkpoint = Paths.get(checkpointFile);
+            int every = Math.max(1, checkpointDays);
+            engine.addListener(new SimulationListener() {
+                @Override
+                public void stateChanged(int agentNum, Agent.State from,
+                                         Agent.State to) {
+                    //do nothing
+                }
+
+                @Override
+                public void dayElapsed(int day) {
+                    if (day % every == 0) saveCheckpoint(engine, checkpoint);
+                }
+            });
+        }
+
+        EventLog eventLog = null;
+
+        try {
+            if (eventFile != null) {
+                eventLog = new EventLog(Paths.get(eventFile), engine);
+            }
+        } catch (IOException exc) {
+            System.err.println("Unable to create event log " + eventFile);
+            System.exit(1);
+        }
+
+        TimeSeriesRecorder series = null;
+
+        try {
+            if (seriesFile != null) {
+                series = new TimeSeriesRecorder(engine,
+                        TimeSeriesSink.open(Paths.get(seriesFile)),
+                        Math.max(0, seriesFlush));
+            }
+        } catch (IOException exc) {
+            System.err.println("Unable to create time series " + seriesFile);
+            System.exit(1);
+        }
+
+        Telemetry telemetry = null;
+
+        if (telemetryFile != null) {
+            telemetry = new Telemetry(engine);
+
+            try {
+                telemetry.register("project4:type=Telemetry");
+                telemetry.startCsv(Paths.get(telemetryFile),
+                        Math.max(1, telemetryInterval));
+            } catch (IOException | JMException exc) {
+                System.err.println("Unable to start telemetry " +
+                        telemetryFile);
+                System.exit(1);
+            }
+
+            engine.setTelemetry(telemetry);
+        }
+
+        long startTime = System.nanoTime();
+        if (resumeFile == null) engine.init();
+        engine.runToCompletion();
+        long elapsed = System.nanoTime() - startTime;
+
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+            } catch (IOException exc) {
+                System.err.println("Unable to write telemetry " +
+                        telemetryFile);
+            }
+        }
+
+        if (checkpointFile != null) {
+            saveCheckpoint(engine, Paths.get(checkpointFile));
+        }
+
+        printCounts(engine);
+        System.out.printf("Finished after %d days in %.3f seconds%n",
+                engine.getDay(), elapsed / 1e9);
+
+        if (series != null) {
+            try {
+                series.close();
+                System.out.println("Wrote daily counts to " + seriesFile);
+            } catch (IOException exc) {
+                System.err.println("Unable to write time series " +
+                        seriesFile);
+            }
+        }
+
+        if (eventLog != null) {
+            try {
+                eventLog.close();
+                System.out.println("Logged " + eventLog.getRecords() +
+                        " transitions to " + eventFile);
+            } catch (IOException exc) {
+                System.err.println("Unable to write event log " + eventFile);
+            }
+        }
+    }
+
+    /**
+     * Saves a snapshot of the simulation, printing an error if it fails
+     * @param engine Simulation engine to be saved
+     * @param file File the snapshot is saved to
+     */
+    private static void saveCheckpoint(SimulationEngine engine, Path file) {
+        try {
+            engine.save(file);
+        } catch (IOException exc) {
+            System.err.println("Unable to save checkpoint " + file);
+        }
+    }
+
+    /**
+     * Prints the amount of agents in each state
+     * @param engine Simulation engine whose counts are printed
+     */
+    protected static void printCounts(SimulationEngine engine) {
+        System.out.println("Seed: " + engine.getSeed());
+        System.out.println("Agents: " + engine.getAgentCount());
+
+        for (Agent.State state : Agent.State.values()) {
+            System.out.println(state + ": " + engine.getCount(state));
+        }
+    }
+}
@@ -5,46 +5,68 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 
 /**
- * A pane that lists the last 5 state changes that occurred
+ * A pane that lists the last 5 state changes that occurred. The changes are
+ * published into a TransitionRing by the worker threads, and the pane
+ * drains it once per frame, so its cost does not depend on how fast the
+ * disease spreads.
  */
 public class HistoryPane extends Pane {
+    private static final int LINES = 5;
     private static final Label historyLbl = new Label("History:");
     private static final VBox listBox = new VBox(10, historyLbl);
-    private static int day = 0;
+    private static final Label[] lines = new Label[LINES];
+    private static final long[] latest = new long[LINES];
+    private static int shownCount = 0;
 
     /**
      * Creates a new HistoryPane object
      */
     public HistoryPane() {
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = new Label();
+            listBox.getChildren().add(lines[i]);
+        }
+
         getChildren().add(listBox);
         setMinWidth(280);
     }
 
     /**
-     * updates the list with a state change and removes the oldest line.
-     * @param agentNum the agent
-     * @param message the state change
+     * Drains the transitions published since the last call and shows the
+     * latest ones, newest first. Lines which are still shown are moved down
+     * by passing their text on to the next label, so only the lines of new
+     * transitions are formatted. This method must be called on the JavaFX
+     * thread.
+     * @param ring ring buffer the transitions are published into
      */
-    protected static void addToHistory(int agentNum, String message){
-        Label historyLine = new Label("Agent " + agentNum + " became "
-                + message + " on Day " + day);
-        listBox.getChildren().add(1,historyLine);
-        if(listBox.getChildren().size() > 6) listBox.getChildren().remove(6);
+    protected static void drain(TransitionRing ring) {
+        int count = ring.drainLatest(latest);
+        if (count == 0) return;
+
+        int kept = Math.min(shownCount, LINES - count);
+
+        for (int i = kept - 1; i >= 0; i--) {
+            lines[i + count].setText(lines[i].getText());
+        }
+
+        for (int i = 0; i < count; i++) {
+            long event = latest[count - 1 - i];
+            lines[i].setText("Agent " + TransitionRing.agentNum(event) +
+                    " became " + TransitionRing.to(event) + " on Day " +
+                    TransitionRing.day(event));
+        }
+
+        shownCount = kept + count;
     }
 
     /**
-     * Clears the list of events and resets the day count to day 0
+     * Clears the list of events
      */
     protected static void reset(){
-        listBox.getChildren().remove(1,listBox.getChildren().size());
-        day = 0;
-    }
+        for (Label line : lines) {
+            line.setText("");
+        }
 
-    /**
-     * Increments the current day elapsed in the simulation by 1
-     */
-    protected static void incDay() {
-        HistoryPane.day++;
+        shownCount = 0;
     }
 }
-
@@ -0,0 +1,82 @@
+package project4;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints. Unlike an ArrayList of Integers it does
+ * not box its elements, and clearing it keeps its array, so a list which is
+ * refilled every tick stops allocating once it has grown large enough.
+ */
+public class IntList {
+    private int[] items;
+    private int size = 0;
+
+    /**
+     * Creates a new, empty list
+     * @param capacity initial capacity of the list
+     */
+    public IntList(int capacity) {
+        items = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds an element to the end of the list
+     * @param value element to be added
+     */
+    public void add(int value) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+
+        items[size++] = value;
+    }
+
+    /**
+     * Replaces an element of the list
+     * @param i index of the element
+     * @param value new element
+     */
+    public void set(int i, int value) {
+        items[i] = value;
+    }
+
+    /**
+     * Removes every element from the given index onwards, keeping the
+     * capacity of the list
+     * @param size amount of elements to be kept
+     */
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    /**
+     * Removes every element from the list, keeping its capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return Amount of elements in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of the element
+     * @return Element at the given index
+     */
+    public int get(int i) {
+        return items[i];
+    }
+
+    /**
+     * Copies every element of the list into an array
+     * @param dest array the elements are copied to
+     * @param pos index in the array of the first element
+     */
+    public void copyTo(int[] dest, int pos) {
+        System.arraycopy(items, 0, dest, pos, size);
+    }
+}
@@ -0,0 +1,159 @@
+package project4;
+
+/**
+ * Double-buffered table of the neighbors of the infectious agents, in
+ * compressed sparse row form. The neighbors of agent i are the agent
+ * indices stored in one flat array from start(i) to end(i), so the whole
+ * table is a few int arrays rather than a list object per agent. Only the
+ * agents of an ActiveSet get a row, since only they spread the disease;
+ * the rows of every other agent are left over from earlier builds and must
+ * not be read. The table is built into a back buffer, split over the
+ * worker threads in blocks of active agents, and the finished buffer is
+ * published by a single volatile write, so readers always see a complete
+ * table. Both buffers are reused, so once they have grown large enough,
+ * building the table allocates nothing.
+ */
+public class NeighborTable {
+    private volatile Buffer front;
+    private Buffer back;
+    private IntList[] blocks = new IntList[0];
+
+    /**
+     * One complete neighbor table
+     */
+    public static final class Buffer {
+        private int[] starts;
+        private int[] ends;
+        private int[] indices = new int[0];
+
+        /**
+         * @param size amount of agents in the table
+         */
+        private Buffer(int size) {
+            starts = new int[size];
+            ends = new int[size];
+        }
+
+        /**
+         * @param i index of an agent which was active when the table was
+         *          built
+         * @return Position of the agent's first neighbor
+         */
+        public int start(int i) {
+            return starts[i];
+        }
+
+        /**
+         * @param i index of an agent which was active when the table was
+         *          built
+         * @return Position after the agent's last neighbor
+         */
+        public int end(int i) {
+            return ends[i];
+        }
+
+        /**
+         * @param position position between start and end of an agent
+         * @return Index of the neighbor at that position
+         */
+        public int neighbor(int position) {
+            return indices[position];
+        }
+    }
+
+    /**
+     * Creates a new table in which no agent has any neighbors
+     * @param size amount of agents in the simulation
+     */
+    public NeighborTable(int size) {
+        front = new Buffer(size);
+    }
+
+    /**
+     * Finds the neighbors of every active agent with the spatial grid,
+     * which must already be up to date, then publishes the new table. The
+     * neighbors may be in any state. Must not be called while any phase
+     * which reads the table or changes the active set is running.
+     * @param store store holding the agents' positions
+     * @param grid spatial index of the agents
+     * @param radius neighbor radius
+     * @param active agents whose neighbors are wanted
+     * @param scheduler scheduler whose workers build the table
+     */
+    protected void build(AgentStore store, SpatialGrid grid, double radius,
+                         ActiveSet active, TickScheduler scheduler) {
+        int size = store.size();
+        int rows = active.size();
+        Buffer table = back == null ? new Buffer(size) : back;
+        if (table.starts.length < size) {
+            table.starts = new int[size];
+            table.ends = new int[size];
+        }
+
+        int count = Math.min(rows, scheduler.getThreads() * 4);
+        if (count < 1) count = 1;
+
+        if (blocks.length != count) {
+            blocks = new IntList[count];
+
+            for (int b = 0; b < count; b++) {
+                blocks[b] = new IntList(8 * (rows / count + 1));
+            }
+        }
+
+        int blockCount = count;
+        scheduler.runPhase(blockCount, (from, to) -> {
+            for (int b = from; b < to; b++) {
+                IntList block = blocks[b];
+                block.clear();
+
+                for (int k = blockStart(b, blockCount, rows);
+                     k < blockStart(b + 1, blockCount, rows); k++) {
+                    int i = active.get(k);
+                    table.starts[i] = block.size();
+                    grid.findNeighbors(store, i, radius, block);
+                    table.ends[i] = block.size();
+                }
+            }
+        });
+
+        int total = 0;
+        for (IntList block : blocks) total += block.size();
+        if (table.indices.length < total) table.indices = new int[total];
+
+        int base = 0;
+
+        for (int b = 0; b < blockCount; b++) {
+            blocks[b].copyTo(table.indices, base);
+
+            for (int k = blockStart(b, blockCount, rows);
+                 k < blockStart(b + 1, blockCount, rows); k++) {
+                int i = active.get(k);
+                table.starts[i] += base;
+                table.ends[i] += base;
+            }
+
+            base += blocks[b].size();
+        }
+
+        back = front;
+        front = table;
+    }
+
+    /**
+     * @param block index of a block
+     * @param blocks amount of blocks
+     * @param rows amount of active agents
+     * @return Position in the active set of the first agent of the block
+     */
+    private static int blockStart(int block, int blocks, int rows) {
+        return (int) ((long) block * rows / blocks);
+    }
+
+    /**
+     * @return The most recently published table
+     */
+    public Buffer current() {
+        return front;
+    }
+}
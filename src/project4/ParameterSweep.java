@@ -0,0 +1,336 @@
+package project4;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs a simulation for every scenario of a parameter sweep without the
+ * GUI. Each --range option gives the minimum, maximum and amount of values
+ * of one disease parameter, both ends of which must be values the engine
+ * accepts, and the ranges are expanded either into every
+ * combination of their values or, with --lhs n, into n scenarios sampled
+ * by Latin hypercube. Parameters which are not swept keep the values of
+ * the config file. The runs are spread over a work-stealing pool, and every
+ * scenario uses the same replica seeds, so differences between scenarios
+ * come from the parameters rather than from the random streams. One row
+ * per run, with the swept values and the outcome, is written to a CSV file.
+ * Usage:
+ * <pre>java project4.ParameterSweep --range infection 0.1 0.9 5
+ *     [--range key min max n]... [--lhs n] [--replicas n] [--threads n]
+ *     [--seed n] [--out file] [config]</pre>
+ */
+public class ParameterSweep {
+    private static final Set<String> SWEEP_KEYS = Set.of("infection",
+            "fatality", "incubation", "sickness", "asymptomatic",
+            "exposuredistance");
+    private static final Agent.State[] STATES = Agent.State.values();
+
+    /**
+     * Range of values of one swept parameter
+     * @param min smallest value
+     * @param max largest value
+     * @param steps amount of values in a Cartesian sweep
+     */
+    private record Range(double min, double max, int steps) {
+        /**
+         * @param i index of the value, from 0 to steps-1
+         * @return The i-th of steps evenly spaced values from min to max
+         */
+        double value(int i) {
+            return steps == 1 ? min : min + (max - min)*i/(steps - 1);
+        }
+    }
+
+    /**
+     * Entry point of the sweep
+     * @param args Command line arguments from the user. The first argument
+     *             which is not an option is the config file to be loaded.
+     */
+    public static void main(String[] args) {
+        Map<String, Range> ranges = new LinkedHashMap<>();
+        int samples = 0;
+        int replicas = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Long baseSeed = null;
+        String outFile = "sweep.csv";
+        String configFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--range" -> {
+                        String key = args[++i].toLowerCase();
+                        Range range = new Range(Double.parseDouble(args[++i]),
+                                Double.parseDouble(args[++i]),
+                                Integer.parseInt(args[++i]));
+
+                        if (!SWEEP_KEYS.contains(key) || range.steps() < 1) {
+                            System.err.println("Invalid range for " + key);
+                            System.exit(1);
+                        }
+
+                        if (!SimulationEngine.isValidParam(key, range.min()) ||
+                                !SimulationEngine.isValidParam(key,
+                                        range.max())) {
+                            System.err.println("Invalid range for " + key +
+                                    ": " + range.min() + " to " +
+                                    range.max() + " is outside of the " +
+                                    "values the simulation accepts");
+                            System.exit(1);
+                        }
+
+                        ranges.put(key, range);
+                    }
+                    case "--sweep" -> {
+                        //do nothing
+                    }
+                    case "--lhs" -> samples = Integer.parseInt(args[++i]);
+                    case "--replicas" -> replicas = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--seed" -> baseSeed = Long.parseLong(args[++i]);
+                    case "--out" -> outFile = args[++i];
+                    default -> {
+                        if (configFile == null) configFile = args[i];
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exc) {
+            System.err.println("Invalid command line options");
+            System.exit(1);
+        }
+
+        if (ranges.isEmpty()) {
+            System.err.println("No --range given");
+            System.exit(1);
+        }
+
+        Map<String, Double> params = new HashMap<>();
+        Long configSeed = null;
+
+        if (configFile != null) {
+            try {
+                params = FileIO.loadDiseaseParams(new File(configFile));
+                configSeed = FileIO.loadSeed(new File(configFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to read config file " + configFile);
+                System.exit(1);
+            }
+        }
+
+        if (baseSeed == null) {
+            baseSeed = configSeed != null ? configSeed :
+                    SplitMix64.mix(System.nanoTime());
+        }
+
+        List<Map<String, Double>> scenarios = samples > 0 ?
+                latinHypercube(ranges, samples, new SplitMix64(baseSeed)) :
+                cartesian(ranges);
+
+        long startTime = System.nanoTime();
+        long[][][][] results = run(params, scenarios, Math.max(1, replicas),
+                threads, baseSeed);
+        long elapsed = System.nanoTime() - startTime;
+
+        try {
+            writeCsv(scenarios, results, new ArrayList<>(ranges.keySet()),
+                    Paths.get(outFile));
+        } catch (IOException exc) {
+            System.err.println("Unable to write " + outFile);
+            System.exit(1);
+        }
+
+        System.out.println("Seed: " + baseSeed);
+        System.out.printf("Ran %d scenarios x %d replicas in %.3f seconds " +
+                        "on %d threads%n", scenarios.size(), replicas,
+                elapsed / 1e9, threads);
+        System.out.println("Wrote results to " + outFile);
+    }
+
+    /**
+     * Expands the ranges into every combination of their values
+     * @param ranges ranges of the swept parameters
+     * @return Swept values of every scenario
+     */
+    private static List<Map<String, Double>> cartesian(
+            Map<String, Range> ranges) {
+        List<Map<String, Double>> scenarios = new ArrayList<>();
+        scenarios.add(new HashMap<>());
+
+        for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+            List<Map<String, Double>> expanded = new ArrayList<>();
+
+            for (Map<String, Double> scenario : scenarios) {
+                for (int i = 0; i < entry.getValue().steps(); i++) {
+                    Map<String, Double> next = new HashMap<>(scenario);
+                    next.put(entry.getKey(), entry.getValue().value(i));
+                    expanded.add(next);
+                }
+            }
+
+            scenarios = expanded;
+        }
+
+        return scenarios;
+    }
+
+    /**
+     * Samples the ranges by Latin hypercube. Every range is split into as
+     * many equal strata as there are samples, and each stratum of each
+     * range is used by exactly one sample, at a random point within it.
+     * @param ranges ranges of the swept parameters
+     * @param samples amount of scenarios to be sampled
+     * @param random random stream the samples are drawn from
+     * @return Swept values of every scenario
+     */
+    private static List<Map<String, Double>> latinHypercube(
+            Map<String, Range> ranges, int samples, SplitMix64 random) {
+        List<Map<String, Double>> scenarios = new ArrayList<>(samples);
+
+        for (int i = 0; i < samples; i++) {
+            scenarios.add(new HashMap<>());
+        }
+
+        for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+            Range range = entry.getValue();
+            int[] strata = new int[samples];
+
+            for (int i = 0; i < samples; i++) {
+                int j = (int) (random.nextDouble()*(i + 1));
+                strata[i] = strata[j];
+                strata[j] = i;
+            }
+
+            for (int i = 0; i < samples; i++) {
+                double u = (strata[i] + random.nextDouble())/samples;
+                scenarios.get(i).put(entry.getKey(),
+                        range.min() + (range.max() - range.min())*u);
+            }
+        }
+
+        return scenarios;
+    }
+
+    /**
+     * Runs every replica of every scenario on a work-stealing pool
+     * @param params settings and disease parameters shared by every run
+     * @param scenarios swept values of every scenario
+     * @param replicas amount of runs of each scenario
+     * @param threads parallelism of the pool
+     * @param baseSeed seed from which the replica seeds are split
+     * @return Per-day counts of every run, indexed by scenario, replica,
+     * day then state ordinal
+     */
+    public static long[][][][] run(Map<String, Double> params,
+                                   List<Map<String, Double>> scenarios,
+                                   int replicas, int threads, long baseSeed) {
+        long[] seeds = new long[replicas];
+        SplitMix64 seedStream = new SplitMix64(baseSeed);
+
+        for (int r = 0; r < replicas; r++) {
+            seeds[r] = seedStream.split();
+        }
+
+        long[][][][] results = new long[scenarios.size()][replicas][][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for (int s = 0; s < scenarios.size(); s++) {
+            Map<String, Double> scenarioParams = new HashMap<>(params);
+            scenarioParams.putAll(scenarios.get(s));
+
+            for (int r = 0; r < replicas; r++) {
+                int scenario = s;
+                int replica = r;
+                tasks.add(ForkJoinTask.adapt(() ->
+                        results[scenario][replica] = EnsembleRunner
+                                .runReplica(scenarioParams, seeds[replica])));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        return results;
+    }
+
+    /**
+     * Writes one row per run to a CSV file, with the scenario and replica
+     * numbers, the swept values, the amount of days run, the largest
+     * amount of infected, asymptomatic and sick agents at the end of a day,
+     * and the final count of every state
+     * @param scenarios swept values of every scenario
+     * @param results per-day counts of every run
+     * @param keys swept parameters, in column order
+     * @param path CSV file to be written
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeCsv(List<Map<String, Double>> scenarios,
+                                long[][][][] results, List<String> keys,
+                                Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path,
+                StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder("scenario,replica");
+
+            for (String key : keys) {
+                line.append(',').append(key);
+            }
+
+            line.append(",days,peak_active");
+
+            for (Agent.State state : STATES) {
+                line.append(',').append(state);
+            }
+
+            out.write(line.toString());
+            out.newLine();
+
+            for (int s = 0; s < results.length; s++) {
+                for (int r = 0; r < results[s].length; r++) {
+                    long[][] days = results[s][r];
+                    line.setLength(0);
+                    line.append(s).append(',').append(r);
+
+                    for (String key : keys) {
+                        line.append(',').append(scenarios.get(s).get(key));
+                    }
+
+                    long peak = 0;
+
+                    for (long[] counts : days) {
+                        peak = Math.max(peak,
+                                counts[Agent.State.INFECTED.ordinal()] +
+                                counts[Agent.State.ASYMPTOMATIC.ordinal()] +
+                                counts[Agent.State.SICK.ordinal()]);
+                    }
+
+                    line.append(',').append(days.length - 1)
+                            .append(',').append(peak);
+
+                    for (long count : days[days.length - 1]) {
+                        line.append(',').append(count);
+                    }
+
+                    out.write(line.toString());
+                    out.newLine();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package project4;
+
+/**
+ * Calendar queue of the days on which agents end their incubation or
+ * illness period. When an agent becomes infected, sick or asymptomatic,
+ * the day its period ends is computed once and the agent is filed in the
+ * bucket of that day, so each day only the agents whose period ends that
+ * day are touched, rather than every agent counting its days. The buckets
+ * form a ring of DAYS days. An agent due more than DAYS days ahead shares
+ * a bucket with nearer days and is simply kept there until its own day
+ * comes around. The due day itself is kept in the AgentStore, so the
+ * calendar can be rebuilt from a store at any time.
+ */
+public class ProgressionCalendar {
+    /** Due day of an agent which is in no incubation or illness period */
+    public static final int NONE = -1;
+    /** Due day of a period which never ends */
+    public static final int NEVER = Integer.MAX_VALUE;
+    private static final int DAYS = 64;
+    private final IntList[] buckets = new IntList[DAYS];
+
+    /**
+     * Creates a new, empty calendar
+     */
+    public ProgressionCalendar() {
+        for (int d = 0; d < DAYS; d++) {
+            buckets[d] = new IntList(16);
+        }
+    }
+
+    /**
+     * Files an agent under the day its period ends. Safe to call from any
+     * thread, such as from the inbox phase.
+     * @param agent store index of the agent
+     * @param day due day of the agent, which must also be written to the
+     *            store; agents due NONE or NEVER are not filed
+     */
+    protected void schedule(int agent, int day) {
+        if (day == NONE || day == NEVER) return;
+        IntList bucket = buckets[day & (DAYS - 1)];
+
+        synchronized (bucket) {
+            bucket.add(agent);
+        }
+    }
+
+    /**
+     * Takes every agent due on the given day out of its bucket. Agents due
+     * on a later day of the same bucket are kept, and entries which no
+     * longer match the store, such as agents already handled, are dropped.
+     * Must not be called while agents are being scheduled.
+     * @param day day whose agents are wanted
+     * @param store store holding the due days
+     * @param agents amount of agents in the store
+     * @param due list the store indices of the due agents are added to
+     */
+    protected void drain(int day, AgentStore store, int agents, IntList due) {
+        IntList bucket = buckets[day & (DAYS - 1)];
+        int kept = 0;
+
+        for (int k = 0; k < bucket.size(); k++) {
+            int i = bucket.get(k);
+            if (i >= agents) continue;
+            int dueDay = store.getDueDay(i);
+
+            if (dueDay == day) {
+                due.add(i);
+            } else if (dueDay > day && (dueDay & (DAYS - 1)) ==
+                    (day & (DAYS - 1))) {
+                bucket.set(kept++, i);
+            }
+        }
+
+        bucket.truncate(kept);
+    }
+
+    /**
+     * Empties the calendar and files every agent of the store which has a
+     * due day, after the agents were restored, forked or moved
+     * @param store store holding the due days
+     * @param agents amount of agents in the store
+     */
+    protected void rebuild(AgentStore store, int agents) {
+        clear();
+
+        for (int i = 0; i < agents; i++) {
+            schedule(i, store.getDueDay(i));
+        }
+    }
+
+    /**
+     * Removes every agent from the calendar
+     */
+    protected void clear() {
+        for (IntList bucket : buckets) {
+            bucket.clear();
+        }
+    }
+}
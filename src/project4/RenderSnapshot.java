@@ -0,0 +1,111 @@
+package project4;
+
+import java.util.Arrays;
+
+/**
+ * Per-frame copy of the agent positions and states, grouped by state, used
+ * to draw the simulation. Capturing the snapshot reads the AgentStore
+ * columns directly, without locking each agent, and the grouping lets the
+ * renderer change its fill color once per state rather than once per agent.
+ * The arrays are reused between frames, so capturing allocates nothing once
+ * the population size is stable.
+ */
+public class RenderSnapshot {
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private byte[] state = new byte[0];
+    private int[] order = new int[0];
+    private final int[] stateStart = new int[Agent.State.values().length + 1];
+    private final int[] next = new int[stateStart.length];
+    private int size = 0;
+
+    /**
+     * Copies the current position and state of every agent in the store and
+     * groups the agents by state with a counting sort
+     * @param store store holding the state of every agent
+     */
+    public void capture(AgentStore store) {
+        size = store.size();
+
+        if (x.length < size) {
+            x = new float[size];
+            y = new float[size];
+            state = new byte[size];
+            order = new int[size];
+        }
+
+        Arrays.fill(next, 0);
+
+        for (int i = 0; i < size; i++) {
+            x[i] = (float) store.getX(i);
+            y[i] = (float) store.getY(i);
+            state[i] = store.getState(i);
+            next[state[i] + 1]++;
+        }
+
+        for (int s = 1; s < next.length; s++) {
+            next[s] += next[s - 1];
+        }
+
+        System.arraycopy(next, 0, stateStart, 0, next.length);
+
+        for (int i = 0; i < size; i++) {
+            order[next[state[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return Amount of agents in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param state ordinal of an agent state
+     * @return Position in the grouped order of the first agent in the state
+     */
+    public int groupStart(int state) {
+        return stateStart[state];
+    }
+
+    /**
+     * @param state ordinal of an agent state
+     * @return Position in the grouped order after the last agent in the state
+     */
+    public int groupEnd(int state) {
+        return stateStart[state + 1];
+    }
+
+    /**
+     * @param position position in the grouped order
+     * @return Index of the agent at that position
+     */
+    public int agentAt(int position) {
+        return order[position];
+    }
+
+    /**
+     * @param i index of the agent
+     * @return x coordinate of the agent when the snapshot was captured
+     */
+    public float getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @return y coordinate of the agent when the snapshot was captured
+     */
+    public float getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Ordinal of the agent's state when the snapshot was captured
+     */
+    public byte getState(int i) {
+        return state[i];
+    }
+}
@@ -0,0 +1,77 @@
+package project4;
+
+/**
+ * Logical clock of a simulation, counted in ticks. A fixed amount of ticks
+ * makes up one simulation day, so the day is derived from the tick count
+ * rather than from wall-clock time, and every observer of the clock agrees
+ * on the current day no matter how fast the simulation is being run. Only
+ * the thread running the ticks advances the clock, while any thread may
+ * read it.
+ */
+public class SimulationClock {
+    private final int ticksPerDay;
+    private volatile long tick = 0;
+
+    /**
+     * Creates a new clock at tick 0
+     * @param ticksPerDay amount of ticks in one simulation day
+     */
+    public SimulationClock(int ticksPerDay) {
+        this.ticksPerDay = ticksPerDay;
+    }
+
+    /**
+     * Marks the current tick as finished
+     * @return True if the finished tick ended a simulation day
+     */
+    protected boolean advance() {
+        long next = tick + 1;
+        tick = next;
+        return next % ticksPerDay == 0;
+    }
+
+    /**
+     * Returns the clock to tick 0
+     */
+    protected void reset() {
+        tick = 0;
+    }
+
+    /**
+     * Moves the clock to the given tick, when a simulation is restored
+     * @param tick number of ticks finished
+     */
+    protected void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * @return Number of ticks finished since the simulation started. While a
+     * tick is running, this is the number of that tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return Number of whole days elapsed since the simulation started
+     */
+    public int getDay() {
+        return (int) (tick / ticksPerDay);
+    }
+
+    /**
+     * @return True if the current tick ends a simulation day, meaning that
+     * the spread and inbox phases are run during it
+     */
+    public boolean isDayTick() {
+        return (tick + 1) % ticksPerDay == 0;
+    }
+
+    /**
+     * @return Amount of ticks in one simulation day
+     */
+    public int getTicksPerDay() {
+        return ticksPerDay;
+    }
+}
@@ -0,0 +1,1408 @@
+package project4;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoublePredicate;
+
+/**
+ * Core of the disease simulation, with no dependency on JavaFX. The engine
+ * owns the agents, the disease parameters, the simulation settings and the
+ * SimulationClock, which derives the current day from the amount of ticks
+ * run. The simulation advances in ticks, whose phases are run over
+ * the agents by a TickScheduler, or optionally by the agents themselves as
+ * actors on platform or virtual threads (see AgentThreads). The GUI
+ * observes the engine through SimulationListener objects, and it can also
+ * be ticked directly to run a simulation headless. All randomness is
+ * derived from a single seed: the engine draws placements from its own
+ * stream, and gives every agent an independent stream split from it.
+ * Disease progression is event driven: the day an agent's incubation or
+ * illness period ends is computed once, when the period starts, and filed
+ * in a ProgressionCalendar, so each day only the agents due that day are
+ * visited rather than every agent counting its days. Likewise the engine
+ * keeps an ActiveSet of the infectious agents, and only they have their
+ * neighbors found and run the spread phase.
+ */
+public class SimulationEngine {
+    private int gridWidth = 200;
+    private int gridHeight = 1;
+    private double simWidth = 400;
+    private double simHeight = 400;
+    private int initSick = 1;
+    private char gridInitMode = 'r';
+    private int randAgents = 0;
+    private volatile double probToSpread = .3;
+    private volatile double probToGetSick = .75;
+    private volatile double probToDie = .25;
+    private volatile double daysOfIncubation = 5;
+    private volatile double daysOfSickness = 10;
+    private double neighborRadius = 20;
+    private volatile long simSpeed = 100;
+    private volatile boolean paused = false;
+    private volatile boolean moveOn = true;
+    private volatile boolean throttled = true;
+    private char executionMode = 'p';
+    private long seed = SplitMix64.mix(System.nanoTime());
+    private SplitMix64 random;
+    private boolean gridConstructed = false;
+    private final ArrayList<Agent> agents = new ArrayList<>();
+    private AgentStore store;
+    private Agent[][] grid;
+    private SpatialGrid spatialGrid;
+    private double stripLeft = 0;
+    private double stripRight = Double.MAX_VALUE;
+    private NeighborTable neighborTable;
+    private final ProgressionCalendar calendar = new ProgressionCalendar();
+    private final IntList due = new IntList(64);
+    private final ActiveSet active = new ActiveSet();
+    private volatile Telemetry telemetry;
+    private final StateCounters counters = new StateCounters();
+    private final SimulationClock clock = new SimulationClock(TICKS_PER_DAY);
+    private final TickScheduler scheduler;
+    private AgentThreads agentThreads;
+    private final Object pauseLock = new Object();
+    private final List<SimulationListener> listeners =
+            new CopyOnWriteArrayList<>();
+    private static final int TICKS_PER_DAY = 5;
+
+    /**
+     * Creates a new engine whose ticks are run by one worker thread per
+     * available core
+     */
+    public SimulationEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new engine whose ticks are run by the given amount of worker
+     * threads
+     * @param threads amount of worker threads, 1 to run every tick on the
+     *                calling thread
+     */
+    public SimulationEngine(int threads) {
+        scheduler = new TickScheduler(threads);
+    }
+
+    /**
+     * Builds the agents according to the current simulation settings and
+     * finds their initial neighbors. After this is called the
+     * initialization mode and population size can no longer be changed.
+     */
+    public synchronized void init() {
+        layoutArea();
+        init(null, 0, simWidth);
+    }
+
+    /**
+     * Grows the simulation area, if needed, so that the population fits
+     * into it with the exposure distance between agents. Growing an area
+     * which is already large enough does nothing, so this can be called
+     * before init to learn the final size of the area.
+     */
+    protected synchronized void layoutArea() {
+        switch (gridInitMode) {
+            case 'g', 'h' -> {
+                if (gridWidth*neighborRadius > simWidth) {
+                    simWidth = gridWidth*neighborRadius;
+                }
+
+                if (gridHeight*neighborRadius > simHeight) {
+                    simHeight = gridHeight*neighborRadius;
+                }
+            }
+            case 'r' -> {
+                double sqrt = Math.sqrt(gridWidth);
+
+                if (sqrt*neighborRadius > simWidth) {
+                    simWidth = sqrt*neighborRadius;
+                }
+
+                if (sqrt*neighborRadius > simHeight) {
+                    simHeight = sqrt*neighborRadius;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the agents whose initial x coordinate passes the given test,
+     * such as the agents of one strip of a TileWorker. The placement, the
+     * random stream and the initial state of every agent only depend on
+     * the seed and the agent's number, so each agent is built exactly as
+     * it would be in the whole population, without building the others.
+     * The agents are added in the order of their numbers. When only part
+     * of the population is built, the agents are not arranged into the
+     * grid, so the simulation cannot be reset.
+     * @param keep test of the initial x coordinate of each agent, or null
+     *             to build the whole population
+     * @param left x coordinate of the left edge of the strip whose agents
+     *             are simulated, which the spatial grid covers along with
+     *             the exposure distance around it
+     * @param right x coordinate of the right edge of the strip
+     */
+    protected synchronized void init(DoublePredicate keep, double left,
+                                     double right) {
+        layoutArea();
+        gridConstructed = true;
+        boolean whole = keep == null;
+        int population = gridInitMode == 'h' ? randAgents :
+                gridWidth*gridHeight;
+
+        stripLeft = left;
+        stripRight = right;
+        spatialGrid = newSpatialGrid();
+        random = new SplitMix64(seed);
+        grid = whole ? new Agent[gridHeight][gridWidth] : new Agent[0][0];
+        store = new AgentStore(whole ? population : 16);
+
+        BitSet infected = pickInfected(population);
+        long placement = random.split();
+        long cells = random.split();
+
+        for (int n = 0; n < population; n++) {
+            SplitMix64 stream =
+                    new SplitMix64(SplitMix64.splitAt(placement, n));
+            int row;
+            int col;
+            int id;
+
+            switch (gridInitMode) {
+                case 'g' -> {
+                    row = n / gridWidth;
+                    col = n % gridWidth;
+                    id = col + row*gridHeight;
+                }
+                case 'h' -> {
+                    int cell = permute(n, gridWidth*gridHeight, cells);
+                    row = cell / gridWidth;
+                    col = cell % gridWidth;
+                    id = n;
+                }
+                default -> {
+                    row = 0;
+                    col = n;
+                    id = n;
+                }
+            }
+
+            double x = gridInitMode == 'r' ? stream.nextDouble()*simWidth :
+                    col*neighborRadius;
+            double y = gridInitMode == 'r' ? stream.nextDouble()*simHeight :
+                    row*neighborRadius;
+            if (!whole && !keep.test(x)) continue;
+
+            Agent agent = new Agent(this, store, infected.get(n), x, y, id,
+                    stream.split());
+            agents.add(agent);
+            if (whole) grid[row][col] = agent;
+        }
+
+        neighborTable = new NeighborTable(store.size());
+        countStates();
+        scheduleInfected();
+        active.rebuild(store, agents.size());
+        updateNeighbors();
+
+        switch (executionMode) {
+            case 't' -> agentThreads = new AgentThreads(agents, false);
+            case 'v' -> agentThreads = new AgentThreads(agents, true);
+        }
+    }
+
+    /**
+     * Starts a daemon thread which ticks the simulation, waiting the current
+     * simulation speed between ticks, or not waiting at all when the
+     * simulation is unthrottled. While the simulation is paused the thread
+     * waits without using the CPU.
+     */
+    public void start() {
+        Thread driver = new Thread(() -> {
+            while (true) {
+                try {
+                    synchronized (pauseLock) {
+                        while (paused) pauseLock.wait();
+                    }
+
+                    tick();
+                    if (throttled) Thread.sleep(simSpeed);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "sim-driver");
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    /**
+     * Resets the simulation by pausing it, returning the agents to their
+     * initial positions and states, and resetting the day count to day 0
+     */
+    public synchronized void reset() {
+        setPaused(true);
+        store.own(AgentStore.MOVEMENT | AgentStore.PROGRESSION);
+
+        switch (gridInitMode) {
+            case 'g' -> resetGrid();
+            case 'r' -> resetRandom();
+            case 'h' -> resetHybrid();
+        }
+
+        clock.reset();
+        countStates();
+        scheduleInfected();
+        active.rebuild(store, agents.size());
+        updateNeighbors();
+    }
+
+    /**
+     * Saves a snapshot of the whole simulation to a binary file: the
+     * settings and disease parameters, the engine's random stream and
+     * clock, every column of the AgentStore including pending messages and
+     * random streams, and the buckets of the spatial grid. The snapshot is
+     * taken between ticks.
+     * @param file file the snapshot is saved to
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void save(Path file) throws IOException {
+        try (SnapshotWriter out = new SnapshotWriter(file)) {
+            out.put((byte) gridInitMode);
+            out.putInt(gridWidth);
+            out.putInt(gridHeight);
+            out.putInt(randAgents);
+            out.putInt(initSick);
+            out.putDouble(simWidth);
+            out.putDouble(simHeight);
+            out.putDouble(neighborRadius);
+            out.putDouble(probToSpread);
+            out.putDouble(probToGetSick);
+            out.putDouble(probToDie);
+            out.putDouble(daysOfIncubation);
+            out.putDouble(daysOfSickness);
+            out.putLong(simSpeed);
+            out.put((byte) (moveOn ? 1 : 0));
+            out.putLong(seed);
+            out.putLong(random.getState());
+            out.putLong(clock.getTick());
+            store.write(out);
+            spatialGrid.write(out);
+            out.complete();
+        }
+    }
+
+    /**
+     * Builds the agents from a snapshot saved by save, instead of calling
+     * init. The restored simulation continues exactly as the saved one
+     * would have, given the same execution mode and a single worker thread.
+     * @param file snapshot file to be read
+     * @throws IOException If the file cannot be read or is not a snapshot
+     * @throws IllegalStateException If the agents have already been built
+     */
+    public synchronized void restore(Path file) throws IOException {
+        if (gridConstructed) {
+            throw new IllegalStateException("Simulation already initialized");
+        }
+
+        try (SnapshotReader in = new SnapshotReader(file)) {
+            gridInitMode = (char) in.get();
+            gridWidth = in.getInt();
+            gridHeight = in.getInt();
+            randAgents = in.getInt();
+            initSick = in.getInt();
+            simWidth = in.getDouble();
+            simHeight = in.getDouble();
+            neighborRadius = in.getDouble();
+            probToSpread = in.getDouble();
+            probToGetSick = in.getDouble();
+            probToDie = in.getDouble();
+            daysOfIncubation = in.getDouble();
+            daysOfSickness = in.getDouble();
+            simSpeed = in.getLong();
+            moveOn = in.get() != 0;
+            seed = in.getLong();
+            long randomState = in.getLong();
+            long tick = in.getLong();
+
+            init();
+            random.setState(randomState);
+            clock.setTick(tick);
+            store.read(in);
+            spatialGrid.read(in);
+        }
+
+        countStates();
+        reindexAgents();
+        updateNeighbors();
+    }
+
+    /**
+     * Forks the simulation in memory, between ticks. The fork starts from
+     * the current day with the same agents, settings and random streams, so
+     * it continues exactly as this simulation would, until either one's
+     * parameters are changed. The agent columns are shared copy-on-write
+     * with this simulation, so a fork costs little memory until it runs.
+     * The fork has no listeners and is not started.
+     * @param threads amount of worker threads of the fork
+     * @return New engine continuing from the current state of this one
+     */
+    public synchronized SimulationEngine fork(int threads) {
+        SimulationEngine fork = new SimulationEngine(threads);
+        fork.gridWidth = gridWidth;
+        fork.gridHeight = gridHeight;
+        fork.simWidth = simWidth;
+        fork.simHeight = simHeight;
+        fork.initSick = initSick;
+        fork.gridInitMode = gridInitMode;
+        fork.randAgents = randAgents;
+        fork.probToSpread = probToSpread;
+        fork.probToGetSick = probToGetSick;
+        fork.probToDie = probToDie;
+        fork.daysOfIncubation = daysOfIncubation;
+        fork.daysOfSickness = daysOfSickness;
+        fork.neighborRadius = neighborRadius;
+        fork.stripLeft = stripLeft;
+        fork.stripRight = stripRight;
+        fork.simSpeed = simSpeed;
+        fork.paused = paused;
+        fork.moveOn = moveOn;
+        fork.throttled = throttled;
+        fork.executionMode = executionMode;
+        fork.seed = seed;
+        fork.random = new SplitMix64(random.getState());
+        fork.gridConstructed = true;
+        fork.store = store.fork();
+        fork.spatialGrid = spatialGrid.copy();
+        fork.neighborTable = new NeighborTable(store.size());
+        fork.clock.setTick(clock.getTick());
+
+        for (int i = 0; i < agents.size(); i++) {
+            fork.agents.add(new Agent(fork, fork.store, i));
+        }
+
+        fork.grid = new Agent[gridHeight][gridWidth];
+
+        for (int i = 0; i < gridHeight; i++) {
+            for (int j = 0; j < gridWidth; j++) {
+                if (grid[i][j] != null) {
+                    fork.grid[i][j] = fork.agents.get(grid[i][j].getIndex());
+                }
+            }
+        }
+
+        // every tick finds the neighbors again before they are used, so the
+        // fork's neighbor table is left empty until it first runs
+        fork.countStates();
+        fork.reindexAgents();
+
+        switch (executionMode) {
+            case 't' -> fork.agentThreads = new AgentThreads(fork.agents,
+                    false);
+            case 'v' -> fork.agentThreads = new AgentThreads(fork.agents,
+                    true);
+        }
+
+        return fork;
+    }
+
+    /**
+     * Removes one agent, moving the last agent into its index. The state
+     * counts are not updated, see countStates.
+     * @param i store index of the agent
+     */
+    protected void removeAgent(int i) {
+        store.remove(i);
+        agents.remove(agents.size() - 1);
+    }
+
+    /**
+     * Adds an agent written by AgentStore.writeAgent to the end of the
+     * simulation. The state counts are not updated, see countStates.
+     * @param in stream the agent is read from
+     * @throws IOException If the stream cannot be read
+     */
+    protected void addAgent(DataInput in) throws IOException {
+        agents.add(new Agent(this, store, store.readAgent(in)));
+    }
+
+    /**
+     * Runs one simulation tick. Every agent moves, then the spatial grid is
+     * updated. Once every 5 ticks, which is one simulation day, the
+     * neighbors of every infectious agent are found and it runs its spread
+     * phase, every agent whose period ends that day runs its progression,
+     * and then every agent processes its inbox.
+     * Each phase is split over the scheduler's worker threads, or run by the
+     * agents' own threads in the actor modes, and every phase has finished
+     * for all agents before the next one starts. When the tick ends a day,
+     * the listeners are notified once the clock has advanced.
+     */
+    public synchronized void tick() {
+        if (clock.isDayTick()) store.own(AgentStore.PROGRESSION);
+        Telemetry telemetry = this.telemetry;
+        long mark = System.nanoTime();
+
+        if (agentThreads != null) {
+            store.own(AgentStore.MOVEMENT);
+            agentThreads.advance();
+            agentThreads.advance();
+            mark = lap(telemetry, Telemetry.Phase.MOVE, mark);
+            if (clock.isDayTick()) updateNeighbors();
+            else updateGrid();
+            mark = lap(telemetry, Telemetry.Phase.NEIGHBORS, mark);
+            agentThreads.advance();
+            agentThreads.advance();
+            if (clock.isDayTick()) {
+                progressionPhase();
+                mark = lap(telemetry, Telemetry.Phase.SPREAD, mark);
+            }
+            agentThreads.advance();
+            agentThreads.advance();
+            if (clock.isDayTick()) {
+                lap(telemetry, Telemetry.Phase.INBOX, mark);
+            }
+        } else {
+            if (moveOn) {
+                movePhase();
+                mark = lap(telemetry, Telemetry.Phase.MOVE, mark);
+            }
+            if (clock.isDayTick()) updateNeighbors();
+            else updateGrid();
+            mark = lap(telemetry, Telemetry.Phase.NEIGHBORS, mark);
+
+            if (clock.isDayTick()) {
+                spreadPhase();
+                progressionPhase();
+                mark = lap(telemetry, Telemetry.Phase.SPREAD, mark);
+                inboxPhase(telemetry);
+                lap(telemetry, Telemetry.Phase.INBOX, mark);
+            }
+        }
+
+        if (telemetry != null) telemetry.recordAgentTicks(store.size());
+        endTick();
+    }
+
+    /**
+     * Moves every agent in the store which is not dead, split over the
+     * worker threads
+     */
+    protected void movePhase() {
+        store.own(AgentStore.MOVEMENT);
+        scheduler.runPhase(store.size(), (from, to) ->
+                store.moveAll(from, to, simWidth, simHeight));
+    }
+
+    /**
+     * Runs the spread phase of every asymptomatic or sick agent, split over
+     * the worker threads. Only the agents of the active set are visited,
+     * so entries appended to the store past the last agent, such as the
+     * ghosts of a TileWorker, can receive messages but never send them.
+     */
+    protected void spreadPhase() {
+        scheduler.runPhase(active.size(), (from, to) -> {
+            for (int k = from; k < to; k++) {
+                agents.get(active.get(k)).spread();
+            }
+        });
+    }
+
+    /**
+     * Runs the progression of every agent whose incubation or illness
+     * period ends today, split over the worker threads. Only the agents
+     * filed in the calendar under today are visited. Must run after the
+     * spread phase, since both draw from the agents' random streams.
+     */
+    protected void progressionPhase() {
+        due.clear();
+        calendar.drain(clock.getDay(), store, agents.size(), due);
+        scheduler.runPhase(due.size(), (from, to) -> {
+            for (int k = from; k < to; k++) {
+                agents.get(due.get(k)).progress();
+            }
+        });
+    }
+
+    /**
+     * Starts the incubation or illness period of an agent which has just
+     * become infected, asymptomatic or sick, filing it in the calendar
+     * under the day the period ends. The period is taken from the current
+     * disease parameters, so changing them later does not move agents
+     * which are already in a period. Safe to call from the inbox phase.
+     * @param i store index of the agent
+     * @param firstDay first day whose spread phase counts towards the
+     *                 period
+     */
+    protected void schedule(int i, int firstDay) {
+        double period = store.getState(i) == Agent.State.INFECTED.ordinal() ?
+                daysOfIncubation : daysOfSickness;
+        double dueDay = firstDay + Math.max(1, Math.ceil(period)) - 1;
+        int day = dueDay < ProgressionCalendar.NEVER ? (int) dueDay :
+                ProgressionCalendar.NEVER;
+
+        store.setDueDay(i, day);
+        calendar.schedule(i, day);
+    }
+
+    /**
+     * Updates the bookkeeping of an agent whose state changed in today's
+     * inbox phase. An agent which became infected, asymptomatic or sick
+     * starts its period, counting from tomorrow, and the active set follows
+     * whether the agent is now infectious. Safe to call from the inbox
+     * phase.
+     * @param i store index of the agent
+     * @param state new state of the agent
+     */
+    protected void enterState(int i, Agent.State state) {
+        switch (state) {
+            case INFECTED -> schedule(i, clock.getDay() + 1);
+            case ASYMPTOMATIC, SICK -> {
+                schedule(i, clock.getDay() + 1);
+                active.add(i);
+            }
+            default -> {
+                store.setDueDay(i, ProgressionCalendar.NONE);
+                active.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Starts the incubation period of every agent which is infected at the
+     * start of a run, counting from today
+     */
+    private void scheduleInfected() {
+        calendar.clear();
+
+        for (int i = 0; i < agents.size(); i++) {
+            if (store.getState(i) == Agent.State.INFECTED.ordinal()) {
+                schedule(i, clock.getDay());
+            }
+        }
+    }
+
+    /**
+     * Files every agent in the calendar again from the due days in the
+     * store, and rebuilds the active set from the states, after the agents
+     * were restored, forked, removed or moved between engines
+     */
+    protected void reindexAgents() {
+        calendar.rebuild(store, agents.size());
+        active.rebuild(store, agents.size());
+    }
+
+    /**
+     * Runs the inbox phase of every agent, split over the worker threads
+     * @param telemetry telemetry receiving the inbox depths, or null
+     */
+    protected void inboxPhase(Telemetry telemetry) {
+        scheduler.runPhase(agents.size(), (from, to) -> {
+            if (telemetry != null) {
+                countInboxDepths(telemetry, from, to);
+            }
+
+            for (int i = from; i < to; i++) {
+                agents.get(i).processMessages();
+            }
+        });
+    }
+
+    /**
+     * Advances the clock at the end of a tick, and notifies the listeners
+     * if the tick ended a day
+     */
+    protected void endTick() {
+        if (clock.advance()) {
+            int today = clock.getDay();
+
+            for (SimulationListener listener : listeners) {
+                listener.dayElapsed(today);
+            }
+        }
+    }
+
+    /**
+     * Records the time since the previous mark as a run of a phase, if
+     * telemetry is attached
+     * @param telemetry telemetry of the tick, or null
+     * @param phase phase which has just finished
+     * @param mark time the phase started, from System.nanoTime
+     * @return Time the phase finished, which starts the next phase
+     */
+    private static long lap(Telemetry telemetry, Telemetry.Phase phase,
+                            long mark) {
+        if (telemetry == null) return mark;
+        long now = System.nanoTime();
+        telemetry.record(phase, now - mark);
+        return now;
+    }
+
+    /**
+     * Counts how many distinct messages each agent in a chunk has waiting
+     * and adds the counts to the inbox depth histogram
+     * @param telemetry telemetry receiving the histogram
+     * @param from index of the first agent in the chunk
+     * @param to index after the last agent in the chunk
+     */
+    private void countInboxDepths(Telemetry telemetry, int from, int to) {
+        long[] depths = new long[Agent.MESSAGE_TYPES + 1];
+
+        for (int i = from; i < to; i++) {
+            depths[Integer.bitCount(store.getMail(i))]++;
+        }
+
+        telemetry.recordInboxDepths(depths);
+    }
+
+    /**
+     * Ticks the simulation on the calling thread, as fast as possible, until
+     * no agent is infected, asymptomatic or sick and no messages are waiting
+     * to be processed
+     */
+    public void runToCompletion() {
+        while (!isSettled()) {
+            tick();
+        }
+    }
+
+    /**
+     * Stops the worker threads and, in the actor modes, the agent threads.
+     * The engine cannot be ticked afterwards.
+     */
+    public void shutdown() {
+        if (agentThreads != null) agentThreads.shutdown();
+        scheduler.shutdown();
+    }
+
+    /**
+     * @return True if the disease can no longer spread or progress, meaning
+     * that no agent is infected, asymptomatic or sick and no agent has
+     * unprocessed messages
+     */
+    public synchronized boolean isSettled() {
+        if (getCount(Agent.State.INFECTED) > 0 ||
+                getCount(Agent.State.ASYMPTOMATIC) > 0 ||
+                getCount(Agent.State.SICK) > 0) {
+            return false;
+        }
+
+        for (Agent agent : agents) {
+            if (agent.hasMessages()) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records a state change of an agent and notifies the listeners. Called
+     * by agents when they process their inbox, from any worker thread.
+     * @param agentNum ID of the agent which changed state
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     */
+    protected void stateChanged(int agentNum, Agent.State from,
+                                Agent.State to) {
+        counters.transition(from, to);
+
+        for (SimulationListener listener : listeners) {
+            listener.stateChanged(agentNum, from, to);
+        }
+    }
+
+    /**
+     * Adds a listener which is notified of state changes and elapsed days
+     * @param listener listener to be added
+     */
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Gets the neighbors for each infectious agent. The spatial grid is
+     * first updated with the agents' current positions, then each agent of
+     * the active set is only checked against the agents in the 3x3 block of
+     * grid cells around it. If the squared distance between them is less
+     * than the squared neighbor radius then they are neighbors. The
+     * neighbors are written into the back buffer of the neighbor table,
+     * which is then published.
+     */
+    protected void updateNeighbors() {
+        spatialGrid.update(store);
+        neighborTable.build(store, spatialGrid, neighborRadius, active,
+                scheduler);
+    }
+
+    /**
+     * Creates an empty spatial grid covering the strip of the agents, or
+     * the whole area, and the exposure distance around it. The cells line
+     * up with those of a grid covering the whole area, so a strip finds its
+     * neighbors in the same order as a single engine would.
+     * @return New spatial grid
+     */
+    private SpatialGrid newSpatialGrid() {
+        double left = Math.max(0, Math.floor(
+                (stripLeft - neighborRadius) / neighborRadius)) *
+                neighborRadius;
+        double right = Math.min(stripRight + neighborRadius, simWidth);
+        return new SpatialGrid(left, right - left, simHeight,
+                neighborRadius);
+    }
+
+    /**
+     * Updates the spatial grid on a tick which does not end a day. The
+     * neighbors are only read by the spread phase, so they are not found
+     * on these ticks, but the grid is still kept up to date every tick so
+     * that the order of its buckets, and with it the order in which
+     * neighbors are found, does not depend on which ticks searched it.
+     */
+    protected void updateGrid() {
+        spatialGrid.update(store);
+    }
+
+    /**
+     * Updates the simulation settings and disease parameters from the given
+     * map object representing the new options
+     * @param params Map object representing desired settings
+     */
+    public synchronized void setParams(Map<String, Double> params) {
+        if (!gridConstructed) {
+            try {
+                double mode = params.get("initmode");
+
+                switch ((int) mode) {
+                    case 0 -> {
+                        gridInitMode = 'g';
+                        try {
+                            double w = params.get("width");
+                            if (w > 0) gridWidth = (int) w;
+                            double h = params.get("height");
+                            if (h > 0) gridHeight = (int) h;
+                        } catch (NullPointerException exc) {
+                            //do nothing
+                        }
+                    }
+                    case 1 -> {
+                        gridInitMode = 'r';
+                        try {
+                            double agents = params.get("random");
+                            if (agents > 0) {
+                                gridWidth = (int) agents;
+                                gridHeight = 1;
+                            }
+                        } catch (NullPointerException exc) {
+                            //do nothing
+                        }
+                    }
+                    case 2 -> {
+                        gridInitMode = 'h';
+                        try {
+                            double w = params.get("width");
+                            if (w > 0) gridWidth = (int) w;
+
+                            double h = params.get("height");
+                            if (h > 0) gridHeight = (int) h;
+
+                            double numAgents = params.get("random");
+                            if (numAgents > 0) {
+                                if (numAgents <= h * w) {
+                                    randAgents = (int) numAgents;
+                                } else {
+                                    randAgents = (int) Math.sqrt(h * w);
+                                    System.err.println("WARNING: Cannot place " +
+                                            numAgents + " agents into a " +
+                                            gridHeight + "x" + gridWidth +
+                                            " grid. Defaulting to " + randAgents +
+                                            " agents.");
+                                }
+                            }
+                        } catch (NullPointerException exc) {
+                            //do nothing
+                        }
+                    }
+                    default -> {
+                        gridInitMode = 'r';
+                        gridWidth = 100;
+                        gridHeight = 1;
+                    }
+                }
+            } catch (NullPointerException exc) {
+                //do nothing
+            }
+
+        }
+
+        try {
+            double numSick = params.get("initialsick");
+            if (numSick > 0) initSick = (int)numSick;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double expDist = params.get("exposuredistance");
+
+            if (isValidParam("exposuredistance", expDist) &&
+                    expDist != neighborRadius) {
+                neighborRadius = expDist;
+                if (gridConstructed) spatialGrid = newSpatialGrid();
+            }
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double infRate = params.get("infection");
+            if (isValidParam("infection", infRate)) probToSpread = infRate;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double asymRate = params.get("asymptomatic");
+            if (isValidParam("asymptomatic", asymRate)) {
+                probToGetSick = 1 - asymRate;
+            }
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double ftlRate = params.get("fatality");
+            if (isValidParam("fatality", ftlRate)) probToDie = ftlRate;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double incPer = params.get("incubation");
+            if (isValidParam("incubation", incPer)) daysOfIncubation = incPer;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double illPer = params.get("sickness");
+            if (isValidParam("sickness", illPer)) daysOfSickness = illPer;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            double mode = params.get("execution");
+
+            if (!gridConstructed) {
+                switch ((int) mode) {
+                    case 0 -> executionMode = 'p';
+                    case 1 -> executionMode = 't';
+                    case 2 -> executionMode = 'v';
+                }
+            }
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+
+        try {
+            long simDelay = params.get("move").longValue();
+
+            if (simDelay >= 5 && simDelay <= 300) {
+                simSpeed = simDelay;
+                moveOn = true;
+            } else if (simDelay < 0)
+                moveOn = false;
+        } catch (NullPointerException exc) {
+            //do nothing
+        }
+    }
+
+    /**
+     * Checks a disease parameter against the values setParams accepts.
+     * Values outside of them are ignored by setParams, which keeps the
+     * current value instead.
+     * @param key name of the parameter, as in a config file
+     * @param value value of the parameter
+     * @return False if setParams would ignore the value
+     */
+    public static boolean isValidParam(String key, double value) {
+        return switch (key) {
+            case "infection", "asymptomatic", "fatality" ->
+                    value >= 0 && value <= 1;
+            case "incubation", "sickness", "exposuredistance" -> value > 0;
+            default -> true;
+        };
+    }
+
+    /**
+     * Resets the simulation agents by returning the agents to a grid of r rows
+     * and c columns, clearing all agent inboxes, and selecting new initially
+     * infected agents
+     */
+    private void resetGrid() {
+        for (int i = 0; i < gridHeight; i++) {
+            for (int j = 0; j < gridWidth; j++) {
+                grid[i][j].relocate(j*neighborRadius,i*neighborRadius);
+                grid[i][j].resetState(false);
+                grid[i][j].clearMessages();
+            }
+        }
+
+        infectGrid();
+    }
+
+    /**
+     * Resets the simulation agents by relocating them to random locations,
+     * clearing all agent inboxes, and selecting new initially infected agents
+     */
+    private void resetRandom() {
+        for (int i = 0; i < gridHeight; i++) {
+            for (int j = 0; j < gridWidth; j++) {
+                double x = random.nextDouble()*simWidth;
+                double y = random.nextDouble()*simHeight;
+                grid[i][j].relocate(x, y);
+                grid[i][j].resetState(false);
+                grid[i][j].clearMessages();
+            }
+        }
+
+        infectRandom();
+    }
+
+    /**
+     * Resets the simulation agents by relocating them to random locations
+     * within a grid of r rows and c columns, clearing all agent inboxes, and
+     * selecting new initially infected agents
+     */
+    private void resetHybrid() {
+        for (int i = 0; i < gridHeight; i++) {
+            for (int j = 0; j < gridWidth; j++) {
+                grid[i][j] = null;
+            }
+        }
+
+        for (int index = 0; index < agents.size(); index++) {
+            agents.get(index).resetState(index < initSick);
+            agents.get(index).clearMessages();
+        }
+
+        placeHybrid();
+    }
+
+    /**
+     * Draws the numbers of the agents which are initially infected, from
+     * the engine's random stream
+     * @param population amount of agents in the whole population
+     * @return Set of the numbers of the infected agents
+     */
+    private BitSet pickInfected(int population) {
+        BitSet infected = new BitSet(population);
+        int numSick = Math.min(initSick, population);
+
+        while (infected.cardinality() < numSick) {
+            infected.set((int) (random.nextDouble()*population));
+        }
+
+        return infected;
+    }
+
+    /**
+     * Shuffles the cells of the grid without listing them, so that each
+     * agent's cell can be found on its own. A 4 round Feistel network
+     * keyed by the seed permutes the numbers up to the next even power of
+     * 2, and numbers past the amount of cells are permuted again until they
+     * fall within it, which keeps the mapping a permutation.
+     * @param n number to be permuted, below size
+     * @param size amount of cells
+     * @param key seed of the shuffle
+     * @return Cell of the given number, distinct for every number
+     */
+    private static int permute(int n, int size, long key) {
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+        int half = (bits + 1) / 2;
+        long mask = (1L << half) - 1;
+        long value = n;
+
+        do {
+            long left = value >>> half;
+            long right = value & mask;
+
+            for (int round = 0; round < 4; round++) {
+                long next = left ^ (SplitMix64.splitAt(key ^ right, round) &
+                        mask);
+                left = right;
+                right = next;
+            }
+
+            value = left << half | right;
+        } while (value >= size);
+
+        return (int) value;
+    }
+
+    /**
+     * Selects random agents of the grid to be initially infected
+     */
+    private void infectGrid() {
+        int numSick = 0;
+
+        while (numSick < initSick) {
+            int row = (int)(random.nextDouble()*gridHeight);
+            int col = (int)(random.nextDouble()*gridWidth);
+
+            if (grid[row][col].getState() != Agent.State.INFECTED) {
+                grid[row][col].resetState(true);
+                numSick++;
+            }
+        }
+    }
+
+    /**
+     * Selects random agents of the population to be initially infected
+     */
+    private void infectRandom() {
+        int numSick = 0;
+
+        while (numSick < initSick) {
+            int index = (int)(random.nextDouble()*(agents.size() - 1));
+            Agent agent = agents.get(index);
+
+            if (agent.getState() != Agent.State.INFECTED) {
+                agent.resetState(true);
+                numSick++;
+            }
+        }
+    }
+
+    /**
+     * Places the agents into random empty cells of the grid, in a random
+     * order
+     */
+    private void placeHybrid() {
+        int[] order = new int[agents.size()];
+
+        for (int i = 0; i < order.length; i++) {
+            int j = (int)(random.nextDouble()*(i + 1));
+            order[i] = order[j];
+            order[j] = i;
+        }
+
+        int numPlaced = 0;
+
+        while (numPlaced < randAgents) {
+            int i = (int)(random.nextDouble()*gridHeight);
+            int j = (int)(random.nextDouble()*gridWidth);
+
+            if (grid[i][j] == null) {
+                grid[i][j] = agents.get(order[numPlaced]);
+                grid[i][j].relocate(j*neighborRadius,i*neighborRadius);
+                numPlaced++;
+            }
+        }
+    }
+
+    /**
+     * Recounts the amount of agents in each state. Needed after the agents
+     * have been reset, since resetting does not go through the inbox.
+     */
+    protected void countStates() {
+        counters.recount(store);
+    }
+
+    /**
+     * @param state Agent state to be counted
+     * @return Amount of agents currently in the given state
+     */
+    public long getCount(Agent.State state) {
+        return counters.get(state);
+    }
+
+    /**
+     * @return Table of the neighbors of every agent, as of the last tick
+     */
+    protected NeighborTable getNeighborTable() {
+        return neighborTable;
+    }
+
+    /**
+     * @return Lock-free counters of the amount of agents in each state
+     */
+    public StateCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Seed from which every random stream of the simulation is
+     * derived. Runs with the same seed and settings on a single worker
+     * thread produce identical results.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Updates the seed from which every random stream of the simulation is
+     * derived. Has no effect once the agents have been built.
+     * @param seed new seed
+     */
+    public synchronized void setSeed(long seed) {
+        if (!gridConstructed) this.seed = seed;
+    }
+
+    /**
+     * @return Amount of agents in the simulation
+     */
+    public int getAgentCount() {
+        return agents.size();
+    }
+
+    /**
+     * @return List containing all agents in the simulation
+     */
+    protected List<Agent> getAgents() {
+        return agents;
+    }
+
+    /**
+     * @return Struct-of-arrays store holding the state of every agent
+     */
+    protected AgentStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return 2-D array of agents in the simulation
+     */
+    protected Agent[][] getGrid() {
+        return grid;
+    }
+
+    /**
+     * @return Amount of rows in the 2-D agent array
+     */
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    /**
+     * @return Amount of columns in the 2-D agent array
+     */
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    /**
+     * @return Width (in pixels) of the simulation area
+     */
+    public double getSimWidth() {
+        return simWidth;
+    }
+
+    /**
+     * @return Height (in pixels) of the simulation area
+     */
+    public double getSimHeight() {
+        return simHeight;
+    }
+
+    /**
+     * @return Distance within which agents are considered neighbors
+     */
+    public double getNeighborRadius() {
+        return neighborRadius;
+    }
+
+    /**
+     * @return Number of ticks run since the simulation started. While a tick
+     * is running, this is the number of that tick.
+     */
+    public long getTick() {
+        return clock.getTick();
+    }
+
+    /**
+     * @return Number of days elapsed since the simulation started
+     */
+    public int getDay() {
+        return clock.getDay();
+    }
+
+    /**
+     * @return Logical clock of the simulation
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return Probability for the disease to spread between agents upon
+     * contact with a sick or asymptomatic agent
+     */
+    public double getProbToSpread() {
+        return probToSpread;
+    }
+
+    /**
+     * Updates the probability for the disease to spread between agents
+     * upon contact with a sick or asymptomatic agent
+     * @param probToSpread new probability of disease spread
+     */
+    public void setProbToSpread(double probToSpread) {
+        this.probToSpread = probToSpread;
+    }
+
+    /**
+     * @return Probability for an infected agent to become sick rather than
+     * asymptomatic after the incubation period has ended
+     */
+    public double getProbToGetSick() {
+        return probToGetSick;
+    }
+
+    /**
+     * Updates the probability for an infected agent to become sick after
+     * the incubation period has ended
+     * @param probToGetSick new probability of becoming sick rather than
+     *                      asymptomatic
+     */
+    public void setProbToGetSick(double probToGetSick) {
+        this.probToGetSick = probToGetSick;
+    }
+
+    /**
+     * @return Probability for a sick agent to die after the illness period
+     * has ended
+     */
+    public double getProbToDie() {
+        return probToDie;
+    }
+
+    /**
+     * Updates the probability for a sick agent to die after the illness
+     * period has ended
+     * @param probToDie new probability of death due to sickness
+     */
+    public void setProbToDie(double probToDie) {
+        this.probToDie = probToDie;
+    }
+
+    /**
+     * @return Amount of days in the disease's incubation period
+     */
+    public double getDaysOfIncubation() {
+        return daysOfIncubation;
+    }
+
+    /**
+     * Updates the amount of days in the disease's incubation period
+     * @param daysOfIncubation new incubation period length in simulation days
+     */
+    public void setDaysOfIncubation(double daysOfIncubation) {
+        this.daysOfIncubation = daysOfIncubation;
+    }
+
+    /**
+     * @return Amount of days in the disease's illness period
+     */
+    public double getDaysOfSickness() {
+        return daysOfSickness;
+    }
+
+    /**
+     * Updates the amount of days in the disease's illness period
+     * @param daysOfSickness new illness period length in simulation days
+     */
+    public void setDaysOfSickness(double daysOfSickness) {
+        this.daysOfSickness = daysOfSickness;
+    }
+
+    /**
+     * @return Delay between each agent movement in milliseconds
+     */
+    public long getSimSpeed() {
+        return simSpeed;
+    }
+
+    /**
+     * Updates the delay between each agent movement during the simulation
+     * @param simSpeed new movement delay in milliseconds
+     */
+    public void setSimSpeed(long simSpeed) {
+        this.simSpeed = simSpeed;
+    }
+
+    /**
+     * @return True if the tick currently being run ends a simulation day,
+     * meaning that the spread and inbox phases are run during it
+     */
+    public boolean isDayTick() {
+        return clock.isDayTick();
+    }
+
+    /**
+     * @return True if the driver thread waits the simulation speed between
+     * ticks, false if it runs ticks as fast as possible
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Updates whether the driver thread waits the simulation speed between
+     * ticks. When unthrottled, days advance as fast as the hardware allows.
+     * @param throttled true to wait between ticks, false to run unthrottled
+     */
+    public void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+    }
+
+    /**
+     * @return Telemetry the ticks are recorded into, or null if none
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Attaches telemetry which records the timings of every following
+     * tick, or detaches it
+     * @param telemetry telemetry to be recorded into, or null to stop
+     *                  recording
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return True if the simulation is currently paused, otherwise false
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Updates whether the simulation is paused or not
+     * @param pauseOn True to pause, false to resume
+     */
+    public void setPaused(boolean pauseOn) {
+        synchronized (pauseLock) {
+            this.paused = pauseOn;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return True if agents are allowed to move, otherwise false
+     */
+    public boolean isMoveOn() {
+        return moveOn;
+    }
+
+    /**
+     * Updates whether agents are allowed to move or not
+     * @param moveOn True if movement is allowed, otherwise false
+     */
+    public void setMovement(boolean moveOn) {
+        this.moveOn = moveOn;
+    }
+}
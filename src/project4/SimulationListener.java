@@ -0,0 +1,24 @@
+package project4;
+
+/**
+ * Observer of a SimulationEngine. The GUI panes register a listener to
+ * display the simulation, but the engine runs the same with or without any
+ * listeners attached.
+ */
+public interface SimulationListener {
+    /**
+     * Called when an agent changes state. This may be called from any thread
+     * which runs agent logic.
+     * @param agentNum ID of the agent which changed state
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     */
+    void stateChanged(int agentNum, Agent.State from, Agent.State to);
+
+    /**
+     * Called when a simulation day has elapsed
+     * @param day Number of days elapsed since the simulation started
+     */
+    default void dayElapsed(int day) {
+    }
+}
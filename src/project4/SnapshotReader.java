@@ -0,0 +1,119 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary snapshot written by a SnapshotWriter, see
+ * SimulationEngine.restore. Only a fixed size buffer of the file is held
+ * in memory, and values must be read in the order they were written.
+ */
+public class SnapshotReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Opens a snapshot file and checks its header
+     * @param file snapshot file to be read
+     * @throws IOException If the file cannot be read, or is not a snapshot
+     */
+    public SnapshotReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(0);
+
+        try {
+            if (getInt() != SnapshotWriter.MAGIC ||
+                    getShort() != SnapshotWriter.VERSION) {
+                throw new IOException(file + " is not a snapshot");
+            }
+
+            getShort();
+        } catch (IOException exc) {
+            channel.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * @return Next byte of the snapshot
+     * @throws IOException If the file cannot be read, or has ended
+     */
+    public byte get() throws IOException {
+        fill(Byte.BYTES);
+        return buffer.get();
+    }
+
+    /**
+     * @return Next short of the snapshot
+     * @throws IOException If the file cannot be read, or has ended
+     */
+    public short getShort() throws IOException {
+        fill(Short.BYTES);
+        return buffer.getShort();
+    }
+
+    /**
+     * @return Next int of the snapshot
+     * @throws IOException If the file cannot be read, or has ended
+     */
+    public int getInt() throws IOException {
+        fill(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    /**
+     * @return Next long of the snapshot
+     * @throws IOException If the file cannot be read, or has ended
+     */
+    public long getLong() throws IOException {
+        fill(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    /**
+     * @return Next double of the snapshot
+     * @throws IOException If the file cannot be read, or has ended
+     */
+    public double getDouble() throws IOException {
+        fill(Double.BYTES);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Makes sure that the buffer holds at least the given amount of bytes,
+     * reading more of the file if needed
+     * @param bytes amount of bytes needed
+     * @throws IOException If the file cannot be read, or ends before the
+     * bytes
+     */
+    private void fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+
+        buffer.compact();
+
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Truncated snapshot");
+            }
+        }
+
+        buffer.flip();
+    }
+
+    /**
+     * Closes the file
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
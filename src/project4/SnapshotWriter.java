@@ -0,0 +1,149 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary snapshot of a whole simulation, see
+ * SimulationEngine.save. Values are written little-endian into a direct
+ * buffer which is written through a FileChannel whenever it fills up.
+ * The snapshot is written to a temporary file next to the target, which
+ * only replaces the target once it is complete, so a crash while saving
+ * never leaves a partial snapshot behind. Use SnapshotReader to read it.
+ */
+public class SnapshotWriter implements Closeable {
+    /** Magic number at the start of every snapshot file, "DSSN" */
+    public static final int MAGIC = 0x4E535344;
+    /** Version of the snapshot layout */
+    public static final short VERSION = 2;
+    private final Path file;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean complete = false;
+
+    /**
+     * Starts a new snapshot and writes its header
+     * @param file file the snapshot is saved to
+     * @throws IOException If the file cannot be created or written to
+     */
+    public SnapshotWriter(Path file) throws IOException {
+        this.file = file;
+        this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        putInt(MAGIC);
+        putShort(VERSION);
+        putShort((short) 0);
+    }
+
+    /**
+     * @param value byte to be written
+     * @throws IOException If the file cannot be written to
+     */
+    public void put(byte value) throws IOException {
+        ensure(Byte.BYTES);
+        buffer.put(value);
+    }
+
+    /**
+     * @param value short to be written
+     * @throws IOException If the file cannot be written to
+     */
+    public void putShort(short value) throws IOException {
+        ensure(Short.BYTES);
+        buffer.putShort(value);
+    }
+
+    /**
+     * @param value int to be written
+     * @throws IOException If the file cannot be written to
+     */
+    public void putInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    /**
+     * @param value long to be written
+     * @throws IOException If the file cannot be written to
+     */
+    public void putLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /**
+     * @param value double to be written
+     * @throws IOException If the file cannot be written to
+     */
+    public void putDouble(double value) throws IOException {
+        ensure(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Marks the snapshot as complete, so that closing the writer replaces
+     * the target file with it. A writer closed without calling this
+     * discards the snapshot.
+     */
+    public void complete() {
+        complete = true;
+    }
+
+    /**
+     * Makes sure the buffer has room for the given amount of bytes, writing
+     * the buffered bytes to the file if needed
+     * @param bytes amount of bytes about to be put
+     * @throws IOException If the file cannot be written to
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flushBuffer();
+    }
+
+    /**
+     * Writes the buffered bytes to the file
+     * @throws IOException If the file cannot be written to
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining bytes and closes the file. If the snapshot was
+     * completed it replaces the target file, otherwise it is deleted.
+     * @throws IOException If the file cannot be written to or moved
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+
+        try {
+            if (complete) {
+                flushBuffer();
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+        }
+
+        if (complete) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
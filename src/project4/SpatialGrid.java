@@ -0,0 +1,262 @@
+package project4;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Uniform-cell spatial index used to find the neighbors of each agent
+ * without comparing every agent against every other agent. The simulation
+ * area is divided into square cells whose side is the neighbor radius, so
+ * every neighbor of an agent must lie in the 3x3 block of cells around the
+ * agent's own cell. Agents are bucketed by position using intrusive linked
+ * lists, and only agents that moved to a different cell are re-bucketed
+ * when the index is updated. The index may cover only part of the width
+ * of the area, such as the strip of a TileWorker; agents outside of it
+ * share the border cells, which only makes those cells slower to scan.
+ */
+public class SpatialGrid {
+    private final double left;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int[] cellHead;
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] cellOf = new int[0];
+    private int size = 0;
+
+    /**
+     * Creates a new, empty spatial index covering the given area
+     * @param width Width (in pixels) of the simulation area
+     * @param height Height (in pixels) of the simulation area
+     * @param cellSize Side length of each cell, normally the neighbor radius
+     */
+    public SpatialGrid(double width, double height, double cellSize) {
+        this(0, width, height, cellSize);
+    }
+
+    /**
+     * Creates a new, empty spatial index covering a vertical strip of the
+     * simulation area
+     * @param left x coordinate of the left edge of the strip
+     * @param width Width (in pixels) of the strip
+     * @param height Height (in pixels) of the simulation area
+     * @param cellSize Side length of each cell, normally the neighbor radius
+     */
+    public SpatialGrid(double left, double width, double height,
+                       double cellSize) {
+        this.left = left;
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        cellHead = new int[cols * rows];
+        Arrays.fill(cellHead, -1);
+    }
+
+    /**
+     * @return Independent copy of this index, with the same buckets in the
+     * same order
+     */
+    protected SpatialGrid copy() {
+        SpatialGrid copy = new SpatialGrid(left, cellSize, cols, rows,
+                cellHead.clone());
+        copy.next = next.clone();
+        copy.prev = prev.clone();
+        copy.cellOf = cellOf.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Creates an index with the given cells, used by copy
+     * @param left x coordinate of the left edge of the index
+     * @param cellSize Side length of each cell
+     * @param cols Amount of columns of cells
+     * @param rows Amount of rows of cells
+     * @param cellHead First agent of each cell's bucket
+     */
+    private SpatialGrid(double left, double cellSize, int cols, int rows,
+                        int[] cellHead) {
+        this.left = left;
+        this.cellSize = cellSize;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellHead = cellHead;
+    }
+
+    /**
+     * Re-buckets the agents according to their current positions. Agents
+     * which are still in the same cell as the last update are left
+     * untouched, so the cost of an update is proportional to the amount of
+     * agents that crossed a cell border.
+     * @param store store holding the agents' positions
+     */
+    protected void update(AgentStore store) {
+        if (store.size() != size) resize(store.size());
+
+        for (int i = 0; i < size; i++) {
+            int cell = cellIndex(store.getX(i), store.getY(i));
+
+            if (cell != cellOf[i]) {
+                unlink(i);
+                link(i, cell);
+            }
+        }
+    }
+
+    /**
+     * Collects every agent whose distance to the given agent is less than
+     * the radius, including the agent itself. Only the 3x3 block of cells
+     * around the agent is scanned, and squared distances are compared so no
+     * square root is taken.
+     * @param store store holding the agents' positions, as passed to update
+     * @param index index of the agent whose neighbors are wanted
+     * @param radius neighbor radius, at most the cell size of this index
+     * @param neighbors list the indices of the neighbors are added to
+     */
+    protected void findNeighbors(AgentStore store, int index, double radius,
+                                 IntList neighbors) {
+        double x = store.getX(index);
+        double y = store.getY(index);
+        double radiusSq = radius * radius;
+        int col = column(x);
+        int row = row(y);
+
+        for (int r = Math.max(0, row - 1);
+             r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1);
+                 c <= Math.min(cols - 1, col + 1); c++) {
+                for (int j = cellHead[r * cols + c]; j != -1; j = next[j]) {
+                    double dx = x - store.getX(j);
+                    double dy = y - store.getY(j);
+                    if (dx * dx + dy * dy < radiusSq) neighbors.add(j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the buckets to a snapshot. The order of the agents within each
+     * bucket decides the order in which neighbors are found, so it is saved
+     * for a restored simulation to continue exactly as the original would.
+     * @param out snapshot being written
+     * @throws IOException If the snapshot cannot be written
+     */
+    protected void write(SnapshotWriter out) throws IOException {
+        out.putInt(cellHead.length);
+        out.putInt(size);
+        for (int head : cellHead) out.putInt(head);
+
+        for (int i = 0; i < size; i++) {
+            out.putInt(next[i]);
+            out.putInt(prev[i]);
+            out.putInt(cellOf[i]);
+        }
+    }
+
+    /**
+     * Replaces the buckets with the buckets of a snapshot, which must cover
+     * the same cells
+     * @param in snapshot being read
+     * @throws IOException If the snapshot cannot be read, or does not match
+     * the cells of this index
+     */
+    protected void read(SnapshotReader in) throws IOException {
+        if (in.getInt() != cellHead.length) {
+            throw new IOException("Snapshot spatial grid does not match");
+        }
+
+        int newSize = in.getInt();
+        if (newSize != size) resize(newSize);
+        for (int c = 0; c < cellHead.length; c++) cellHead[c] = in.getInt();
+
+        for (int i = 0; i < size; i++) {
+            next[i] = in.getInt();
+            prev[i] = in.getInt();
+            cellOf[i] = in.getInt();
+        }
+    }
+
+    /**
+     * Resizes the per-agent bookkeeping arrays. Agents past the new size are
+     * removed from their buckets and new agents start in no bucket, so the
+     * next update only links the agents which were added or whose index now
+     * holds a different position. Only needed when the amount of agents
+     * changes.
+     * @param newSize new amount of agents in the simulation
+     */
+    private void resize(int newSize) {
+        for (int i = newSize; i < size; i++) {
+            unlink(i);
+        }
+
+        if (newSize > next.length) {
+            int capacity = Math.max(newSize, next.length + next.length / 2);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            cellOf = Arrays.copyOf(cellOf, capacity);
+        }
+
+        for (int i = size; i < newSize; i++) {
+            cellOf[i] = -1;
+        }
+
+        size = newSize;
+    }
+
+    /**
+     * Adds an agent to the front of the given cell's bucket
+     * @param i index of the agent
+     * @param cell index of the cell
+     */
+    private void link(int i, int cell) {
+        int head = cellHead[cell];
+        next[i] = head;
+        prev[i] = -1;
+        if (head != -1) prev[head] = i;
+        cellHead[cell] = i;
+        cellOf[i] = cell;
+    }
+
+    /**
+     * Removes an agent from the bucket of the cell it is currently in, if any
+     * @param i index of the agent
+     */
+    private void unlink(int i) {
+        int cell = cellOf[i];
+        if (cell == -1) return;
+
+        if (prev[i] != -1) next[prev[i]] = next[i];
+        else cellHead[cell] = next[i];
+        if (next[i] != -1) prev[next[i]] = prev[i];
+        cellOf[i] = -1;
+    }
+
+    /**
+     * @param x x coordinate in the simulation area
+     * @param y y coordinate in the simulation area
+     * @return Index of the cell containing the given point. Points outside
+     * of the simulation area are clamped to the nearest border cell.
+     */
+    private int cellIndex(double x, double y) {
+        return row(y) * cols + column(x);
+    }
+
+    /**
+     * @param x x coordinate in the simulation area
+     * @return Column of the cell containing the given x coordinate
+     */
+    private int column(double x) {
+        int col = (int) ((x - left) / cellSize);
+        return col < 0 ? 0 : Math.min(col, cols - 1);
+    }
+
+    /**
+     * @param y y coordinate in the simulation area
+     * @return Row of the cell containing the given y coordinate
+     */
+    private int row(double y) {
+        int row = (int) (y / cellSize);
+        return row < 0 ? 0 : Math.min(row, rows - 1);
+    }
+}
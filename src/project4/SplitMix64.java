@@ -0,0 +1,103 @@
+package project4;
+
+/**
+ * Small, seedable SplitMix64 random number generator, the same algorithm
+ * used by java.util.SplittableRandom. Unlike Math.random() it is not shared
+ * between threads, so nothing contends on it, and its whole state is a
+ * single long which can be stored in a primitive column or saved and
+ * restored. The static helpers let AgentStore keep one independent stream
+ * per agent in a long[] without allocating a generator object per agent.
+ */
+public class SplitMix64 {
+    private long state;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /**
+     * Creates a new generator with the given seed
+     * @param seed initial state of the generator
+     */
+    public SplitMix64(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * @return Next pseudo-random long of this generator's stream
+     */
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * @return Next pseudo-random double of this generator's stream, uniform
+     * in the range [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return Seed for an independent stream, derived from this stream
+     */
+    public long split() {
+        return mix(nextLong());
+    }
+
+    /**
+     * Jumps straight to one of the seeds split from a stream, so that the
+     * seed of any one agent can be derived without generating the seeds of
+     * the agents before it
+     * @param seed seed of the stream
+     * @param n number of the split, counting from 0
+     * @return Seed which the n-th call of split returns for a generator
+     * created with the given seed, if nothing else is drawn from it
+     */
+    public static long splitAt(long seed, long n) {
+        return mix(mix(seed + (n + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @return Current state of the generator
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * @param state new state of the generator, as returned by getState
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Advances a stream whose state is held by the caller
+     * @param state current state of the stream
+     * @return Next state of the stream
+     */
+    public static long advance(long state) {
+        return state + GOLDEN_GAMMA;
+    }
+
+    /**
+     * Converts the state of a stream, after it has been advanced, into a
+     * pseudo-random double uniform in the range [0, 1)
+     * @param state advanced state of the stream
+     * @return Pseudo-random double for that state
+     */
+    public static double toDouble(long state) {
+        return (mix(state) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * SplitMix64 output function, which scrambles the bits of a state
+     * @param z state to be scrambled
+     * @return Scrambled value
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,70 @@
+package project4;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the amount of agents in each state. Every worker thread records
+ * the transitions of its agents without taking a lock, using one LongAdder
+ * per state, and observers such as the StatsGraph read a snapshot of the
+ * counts whenever they need it.
+ */
+public class StateCounters {
+    private final LongAdder[] counts;
+    private static final Agent.State[] STATES = Agent.State.values();
+
+    /**
+     * Creates a new set of counters, all starting at 0
+     */
+    public StateCounters() {
+        counts = new LongAdder[STATES.length];
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records that an agent changed state. Safe to call from any thread.
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     */
+    public void transition(Agent.State from, Agent.State to) {
+        counts[from.ordinal()].decrement();
+        counts[to.ordinal()].increment();
+    }
+
+    /**
+     * Recounts every state from the states held in the given store. Must not
+     * be called while agents are changing state.
+     * @param store store holding the state of every agent
+     */
+    public void recount(AgentStore store) {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+
+        for (int i = 0; i < store.size(); i++) {
+            counts[store.getState(i)].increment();
+        }
+    }
+
+    /**
+     * @param state Agent state to be counted
+     * @return Amount of agents currently in the given state
+     */
+    public long get(Agent.State state) {
+        return counts[state.ordinal()].sum();
+    }
+
+    /**
+     * Copies the current count of every state into the given array, indexed
+     * by state ordinal. If agents are changing state at the same time, the
+     * counts may be from slightly different moments.
+     * @param snapshot array of at least one element per state
+     */
+    public void snapshot(long[] snapshot) {
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+    }
+}
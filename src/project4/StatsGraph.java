@@ -9,7 +9,8 @@ import javafx.scene.text.Font;
 /**
  * A pane that displays the number of agents in specific states during the
  * simulation using a bar graph. Uses a canvas to display the bar graph of
- * agent states, and is updated when agent objects undergo state changes.
+ * agent states, and is updated once per frame on the JavaFX thread from a
+ * snapshot of the engine's StateCounters.
  */
 public class StatsGraph extends Pane {
     private static double agentNum;
@@ -92,7 +93,7 @@ public class StatsGraph extends Pane {
      * bar graph magnitude ticks accordingly
      * @param agentNum Amount of agents in the simulation
      */
-    protected static synchronized void setAgentNum(int agentNum){
+    protected static void setAgentNum(int agentNum){
         StatsGraph.agentNum = agentNum;
         vulNum = agentNum;
         gc.setFill(Color.BLACK);
@@ -109,68 +110,45 @@ public class StatsGraph extends Pane {
     }
 
     /**
-     * Increments the number of dead agents in the simulation by 1. This
-     * method should only be called when an agent has transitioned to dead
-     * state.
+     * Updates the bar graph from a snapshot of the amount of agents in each
+     * state. Infected agents are still shown as vulnerable, since they have
+     * not become sick or asymptomatic yet. Only bars whose value changed
+     * are redrawn. This method must be called on the JavaFX thread.
+     * @param counts amount of agents in each state, indexed by the ordinal
+     *               of Agent.State
      */
-    protected static synchronized void incDead(){
-        deadNum++;
-        drawDeadBar();
-    }
-
-    /**
-     * Increments the number of sick agents in the simulation by 1. Also
-     * decrements the number of vulnerable agents by 1. This method should
-     * only be called when an agent has transitioned to sick state.
-     */
-    protected static synchronized void incSick(){
-        sickNum++;
-        drawSickBar();
-        vulNum--;
-        drawVulBar();
-    }
-
-    /**
-     * Decrements the number of sick agents in the simulation by 1. This
-     * method should only be called when an agent has transitioned out of
-     * sick state.
-     */
-    protected static synchronized void decSick() {
-        sickNum--;
-        drawSickBar();
-    }
-
-    /**
-     * Increments the number of immune agents in the simulation by 1. This
-     * method should only be called when an agent has transitioned to immune
-     * state.
-     */
-    protected static synchronized void incImm(){
-        immNum++;
-        drawImmBar();
-    }
-
-    /**
-     * Increments the number of asymptomatic agents in the simulation by 1.
-     * Also decrements the number of vulnerable agents by 1. This method
-     * should only be called when an agent has transitioned to asymptomatic
-     * state.
-     */
-    protected static synchronized void incAsym(){
-        asymNum++;
-        drawAsymBar();
-        vulNum--;
-        drawVulBar();
-    }
-
-    /**
-     * Decrements the number of asymptomatic agents in the simulation by 1.
-     * This method should only be called when an agent has transitioned out
-     * of asymptomatic state.
-     */
-    protected static synchronized void decAsym(){
-        asymNum--;
-        drawAsymBar();
+    protected static void update(long[] counts) {
+        double vul = counts[Agent.State.VULNERABLE.ordinal()] +
+                counts[Agent.State.INFECTED.ordinal()];
+        double sick = counts[Agent.State.SICK.ordinal()];
+        double asym = counts[Agent.State.ASYMPTOMATIC.ordinal()];
+        double dead = counts[Agent.State.DEAD.ordinal()];
+        double imm = counts[Agent.State.IMMUNE.ordinal()];
+
+        if (vul != vulNum) {
+            vulNum = vul;
+            drawVulBar();
+        }
+
+        if (sick != sickNum) {
+            sickNum = sick;
+            drawSickBar();
+        }
+
+        if (asym != asymNum) {
+            asymNum = asym;
+            drawAsymBar();
+        }
+
+        if (dead != deadNum) {
+            deadNum = dead;
+            drawDeadBar();
+        }
+
+        if (imm != immNum) {
+            immNum = imm;
+            drawImmBar();
+        }
     }
 
     /**
@@ -178,7 +156,7 @@ public class StatsGraph extends Pane {
      * simulation conditions. This method should only be called when the
      * simulation has been reset.
      */
-    protected static synchronized void reset(){
+    protected static void reset(){
         vulNum = agentNum;
         deadNum = 0;
         sickNum = 0;
@@ -0,0 +1,431 @@
+package project4;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime instrumentation of a simulation. The engine records how long
+ * each phase of every tick takes, how many agent-ticks it runs and, in the
+ * pool execution mode, how many distinct messages each agent has waiting
+ * at the start of the inbox phase. The GUI records how long each frame
+ * takes to draw. The totals are kept in LongAdders, so recording never
+ * blocks the worker threads. Together with the JVM's allocation and
+ * garbage collection counters, they are exposed as a JMX MBean and can be
+ * appended to a CSV file at a fixed period, along with the amount of
+ * agents in each state, so slowdowns can be matched to the population size
+ * and the phase of the outbreak.
+ */
+public class Telemetry implements TelemetryMBean, Closeable {
+    private final SimulationEngine engine;
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+    private final LongAdder[] phaseCounts = new LongAdder[PHASES.length];
+    private final LongAdder agentTicks = new LongAdder();
+    private final LongAdder[] inboxDepths =
+            new LongAdder[Agent.MESSAGE_TYPES + 1];
+    private ScheduledExecutorService csvTimer;
+    private CsvRow csvRow;
+    private BufferedWriter csv;
+    private ObjectName name;
+    private Map<Long, Long> threadBytes = new HashMap<>();
+    private long exitedBytes = 0;
+    private static final Phase[] PHASES = Phase.values();
+    private static final Agent.State[] STATES = Agent.State.values();
+
+    /**
+     * Timed parts of a tick, and the drawing of a frame
+     */
+    public enum Phase {
+        MOVE,
+        NEIGHBORS,
+        SPREAD,
+        INBOX,
+        RENDER
+    }
+
+    /**
+     * Creates new telemetry for the given engine, with every counter at 0.
+     * The engine only records into it once passed to setTelemetry.
+     * @param engine engine being measured
+     */
+    public Telemetry(SimulationEngine engine) {
+        this.engine = engine;
+
+        for (int p = 0; p < PHASES.length; p++) {
+            phaseNanos[p] = new LongAdder();
+            phaseCounts[p] = new LongAdder();
+        }
+
+        for (int d = 0; d < inboxDepths.length; d++) {
+            inboxDepths[d] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one run of a phase. Safe to call from any thread.
+     * @param phase phase which was run
+     * @param nanos time the phase took in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+        phaseCounts[phase.ordinal()].increment();
+    }
+
+    /**
+     * Records the agents run by a tick
+     * @param agents amount of agents in the tick
+     */
+    protected void recordAgentTicks(int agents) {
+        agentTicks.add(agents);
+    }
+
+    /**
+     * Adds counts of inbox depths to the histogram
+     * @param depths amount of agents seen with each amount of distinct
+     *               messages waiting, indexed by the amount of messages
+     */
+    protected void recordInboxDepths(long[] depths) {
+        for (int d = 0; d < depths.length; d++) {
+            if (depths[d] != 0) inboxDepths[d].add(depths[d]);
+        }
+    }
+
+    /**
+     * Registers this telemetry with the platform MBean server
+     * @param name object name of the MBean, such as
+     *             project4:type=Telemetry
+     * @throws JMException If the name is invalid or already registered
+     */
+    public void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, objectName);
+        this.name = objectName;
+    }
+
+    /**
+     * Starts appending a row of every counter to a CSV file at a fixed
+     * period, on a daemon thread. Timings and rates in each row are for
+     * the period since the previous row.
+     * @param file CSV file to be written, replacing any existing file
+     * @param periodMillis time between rows in milliseconds
+     * @throws IOException If the file cannot be created
+     */
+    public synchronized void startCsv(Path file, long periodMillis)
+            throws IOException {
+        csv = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        StringBuilder header = new StringBuilder("time_ms,tick,day,agents");
+
+        for (Agent.State state : STATES) {
+            header.append(',').append(state);
+        }
+
+        header.append(",agent_ticks_per_sec");
+
+        for (Phase phase : PHASES) {
+            header.append(',').append(phase.name().toLowerCase())
+                    .append("_ms");
+        }
+
+        for (int d = 0; d < inboxDepths.length; d++) {
+            header.append(",inbox_").append(d);
+        }
+
+        header.append(",allocated_mb,gc_count,gc_ms,heap_mb");
+        csv.write(header.toString());
+        csv.newLine();
+        csv.flush();
+
+        long start = System.nanoTime();
+        csvRow = new CsvRow(start);
+        csvTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "telemetry-csv");
+            thread.setDaemon(true);
+            return thread;
+        });
+        csvTimer.scheduleAtFixedRate(csvRow::write, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writer of the CSV rows, which remembers the totals of the previous
+     * row so that each row covers its own period
+     */
+    private class CsvRow {
+        private final long start;
+        private long lastTime;
+        private long lastAgentTicks = 0;
+        private final long[] lastNanos = new long[PHASES.length];
+        private final long[] lastCounts = new long[PHASES.length];
+        private final long[] counts = new long[STATES.length];
+
+        /**
+         * @param start time the CSV was started, from System.nanoTime
+         */
+        CsvRow(long start) {
+            this.start = start;
+            this.lastTime = start;
+        }
+
+        /**
+         * Appends one row to the CSV file
+         */
+        void write() {
+            long now = System.nanoTime();
+            StringBuilder line = new StringBuilder();
+            line.append((now - start) / 1000000).append(',')
+                    .append(engine.getTick()).append(',')
+                    .append(engine.getDay()).append(',')
+                    .append(engine.getAgentCount());
+            engine.getCounters().snapshot(counts);
+
+            for (long count : counts) {
+                line.append(',').append(count);
+            }
+
+            long ticks = agentTicks.sum();
+            line.append(',').append(format((ticks - lastAgentTicks) /
+                    ((now - lastTime) / 1e9)));
+            lastAgentTicks = ticks;
+            lastTime = now;
+
+            for (int p = 0; p < PHASES.length; p++) {
+                long nanos = phaseNanos[p].sum();
+                long runs = phaseCounts[p].sum();
+                line.append(',').append(format(runs == lastCounts[p] ? 0 :
+                        (nanos - lastNanos[p]) / 1e6 / (runs - lastCounts[p])));
+                lastNanos[p] = nanos;
+                lastCounts[p] = runs;
+            }
+
+            for (LongAdder depth : inboxDepths) {
+                line.append(',').append(depth.sum());
+            }
+
+            line.append(',').append(format(getAllocatedBytes() / 1048576.0))
+                    .append(',').append(getGcCount())
+                    .append(',').append(getGcTimeMillis())
+                    .append(',').append(format(getHeapUsedBytes() /
+                            1048576.0));
+
+            synchronized (Telemetry.this) {
+                if (csv == null) return;
+
+                try {
+                    csv.write(line.toString());
+                    csv.newLine();
+                    csv.flush();
+                } catch (IOException exc) {
+                    System.err.println("Unable to write telemetry CSV");
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value number to be written to the CSV file
+     * @return Number with 3 decimals
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * @param phase a timed phase
+     * @return Mean time of the phase in milliseconds, 0 if it never ran
+     */
+    private double meanMillis(Phase phase) {
+        long runs = phaseCounts[phase.ordinal()].sum();
+        if (runs == 0) return 0;
+        return phaseNanos[phase.ordinal()].sum() / 1e6 / runs;
+    }
+
+    @Override
+    public long getTick() {
+        return engine.getTick();
+    }
+
+    @Override
+    public int getDay() {
+        return engine.getDay();
+    }
+
+    @Override
+    public int getAgents() {
+        return engine.getAgentCount();
+    }
+
+    @Override
+    public long getAgentTicks() {
+        return agentTicks.sum();
+    }
+
+    @Override
+    public double getAgentTicksPerSecond() {
+        long nanos = 0;
+
+        for (Phase phase : PHASES) {
+            if (phase != Phase.RENDER) {
+                nanos += phaseNanos[phase.ordinal()].sum();
+            }
+        }
+
+        return nanos == 0 ? 0 : agentTicks.sum() / (nanos / 1e9);
+    }
+
+    @Override
+    public double getMeanMoveMillis() {
+        return meanMillis(Phase.MOVE);
+    }
+
+    @Override
+    public double getMeanNeighborMillis() {
+        return meanMillis(Phase.NEIGHBORS);
+    }
+
+    @Override
+    public double getMeanSpreadMillis() {
+        return meanMillis(Phase.SPREAD);
+    }
+
+    @Override
+    public double getMeanInboxMillis() {
+        return meanMillis(Phase.INBOX);
+    }
+
+    @Override
+    public double getMeanRenderMillis() {
+        return meanMillis(Phase.RENDER);
+    }
+
+    @Override
+    public long[] getInboxDepthHistogram() {
+        long[] histogram = new long[inboxDepths.length];
+
+        for (int d = 0; d < histogram.length; d++) {
+            histogram[d] = inboxDepths[d].sum();
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Sums the bytes allocated by every live thread, plus the last reading
+     * of every thread which has exited since the previous call, so that the
+     * total never goes down when pool or ensemble threads exit. Bytes which
+     * a thread allocated between its last reading and its exit are missed.
+     * @return Bytes allocated so far, or -1 if the JVM cannot measure it
+     */
+    @Override
+    public synchronized long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean sunThreads) ||
+                !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = sunThreads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> live = new HashMap<>();
+        long total = 0;
+
+        for (int t = 0; t < ids.length; t++) {
+            if (allocated[t] > 0) {
+                live.put(ids[t], allocated[t]);
+                total += allocated[t];
+            }
+        }
+
+        for (Map.Entry<Long, Long> entry : threadBytes.entrySet()) {
+            if (!live.containsKey(entry.getKey())) {
+                exitedBytes += entry.getValue();
+            }
+        }
+
+        threadBytes = live;
+        return exitedBytes + total;
+    }
+
+    @Override
+    public long getGcCount() {
+        long total = 0;
+
+        for (GarbageCollectorMXBean gc :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+
+        return total;
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        long total = 0;
+
+        for (GarbageCollectorMXBean gc :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+
+        return total;
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+
+    /**
+     * Stops the CSV dump, writing one last row, and unregisters the MBean
+     * @throws IOException If the CSV file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (csvTimer != null) {
+            csvTimer.shutdown();
+
+            try {
+                csvTimer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+
+            csvRow.write();
+        }
+
+        synchronized (this) {
+            if (csv != null) {
+                csv.close();
+                csv = null;
+            }
+        }
+
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .unregisterMBean(name);
+            } catch (JMException exc) {
+                //do nothing
+            }
+
+            name = null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package project4;
+
+/**
+ * Management interface of the Telemetry of a running simulation, as shown
+ * by JMX clients such as JConsole. Mean timings are in milliseconds per
+ * tick, or per frame for rendering, since the telemetry was created.
+ */
+public interface TelemetryMBean {
+    /**
+     * @return Number of ticks run since the simulation started
+     */
+    long getTick();
+
+    /**
+     * @return Number of days elapsed since the simulation started
+     */
+    int getDay();
+
+    /**
+     * @return Amount of agents in the simulation
+     */
+    int getAgents();
+
+    /**
+     * @return Amount of agent-ticks run since the telemetry was created
+     */
+    long getAgentTicks();
+
+    /**
+     * @return Agent-ticks run per second of time spent ticking
+     */
+    double getAgentTicksPerSecond();
+
+    /**
+     * @return Mean time of the movement phase
+     */
+    double getMeanMoveMillis();
+
+    /**
+     * @return Mean time of the neighbor rebuild
+     */
+    double getMeanNeighborMillis();
+
+    /**
+     * @return Mean time of the spread phase, on day ticks
+     */
+    double getMeanSpreadMillis();
+
+    /**
+     * @return Mean time of the inbox phase, on day ticks
+     */
+    double getMeanInboxMillis();
+
+    /**
+     * @return Mean time of drawing a frame of the UI
+     */
+    double getMeanRenderMillis();
+
+    /**
+     * @return Amount of agents found with 0 to 5 distinct messages waiting
+     * at the start of the inbox phase, indexed by the amount of messages
+     */
+    long[] getInboxDepthHistogram();
+
+    /**
+     * @return Bytes allocated by the JVM's threads so far, including threads
+     * which have exited since they were last measured, or -1 if the JVM
+     * cannot measure it
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return Amount of garbage collections run by the JVM so far
+     */
+    long getGcCount();
+
+    /**
+     * @return Time spent in garbage collection by the JVM so far
+     */
+    long getGcTimeMillis();
+
+    /**
+     * @return Bytes of heap currently in use
+     */
+    long getHeapUsedBytes();
+}
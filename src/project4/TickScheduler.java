@@ -0,0 +1,100 @@
+package project4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the phases of a simulation tick on a fixed pool of worker threads.
+ * The agents are partitioned into one contiguous chunk per worker, and each
+ * phase only returns once every chunk is done, which acts as a barrier
+ * between the phases. A scheduler with a single worker runs every phase
+ * directly on the calling thread.
+ */
+public class TickScheduler {
+    private final int threads;
+    private final ExecutorService pool;
+
+    /**
+     * Work done by a worker during a phase
+     */
+    public interface ChunkTask {
+        /**
+         * Processes the agents with indices in the given range
+         * @param from index of the first agent, inclusive
+         * @param to index of the last agent, exclusive
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Creates a new scheduler with the given amount of worker threads
+     * @param threads amount of worker threads, normally the core count
+     */
+    public TickScheduler(int threads) {
+        this.threads = Math.max(1, threads);
+
+        if (this.threads > 1) {
+            pool = Executors.newFixedThreadPool(this.threads, r -> {
+                Thread thread = new Thread(r, "sim-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Runs a phase over the agents with indices 0 to size-1, split into one
+     * chunk per worker, and waits until every chunk is done
+     * @param size amount of agents to be processed
+     * @param task work to be done for each chunk
+     */
+    public void runPhase(int size, ChunkTask task) {
+        if (pool == null || size < threads * 2) {
+            task.run(0, size);
+            return;
+        }
+
+        List<Callable<Void>> chunks = new ArrayList<>(threads);
+        int chunkSize = (size + threads - 1) / threads;
+
+        for (int from = 0; from < size; from += chunkSize) {
+            int start = from;
+            int end = Math.min(size, from + chunkSize);
+            chunks.add(() -> {
+                task.run(start, end);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : pool.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exc) {
+            throw new IllegalStateException(exc.getCause());
+        }
+    }
+
+    /**
+     * @return Amount of worker threads used by this scheduler
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Stops the worker threads. The scheduler cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+}
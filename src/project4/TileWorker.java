@@ -0,0 +1,486 @@
+package project4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One process of a distributed simulation, started by a DistributedRunner.
+ * The simulation area is split into vertical strips of equal width, one
+ * per worker, and each worker only keeps the agents whose x coordinate is
+ * in its strip. Workers are connected to the workers of the neighboring
+ * strips by loopback sockets, and only talk to them on the tick which ends
+ * a day, since the spread phase is the only one which needs the agents of
+ * another strip. On that tick, after moving its agents, each worker:
+ * <ol>
+ * <li>hands the agents which moved out of its strip over to the worker of
+ * the strip they moved into, along with their random streams,</li>
+ * <li>sends the position of every agent within the exposure distance of a
+ * border to the worker across it, which adds them to its store as ghosts,
+ * so that its spreading agents see every neighbor they would see in a
+ * single process,</li>
+ * <li>runs the spread phase, then returns the mail sent to the ghosts to
+ * their owners in one batch per neighbor, and drops the ghosts,</li>
+ * <li>runs the progression of its agents due that day and the inbox
+ * phase, and reports its counts to the runner, which tells every worker
+ * whether to run another day.</li>
+ * </ol>
+ * Every exchange over a link is written by the worker of the lower strip
+ * first, then answered, so two workers never wait on each other's writes.
+ * Each worker only builds the agents which start in its strip. Every
+ * agent is derived from the shared seed and its own number, so the
+ * distributed run starts from exactly the agents a single process would
+ * have built, while no process ever holds the whole population. The
+ * spatial grid of a worker only covers its strip and the exposure distance
+ * around it. Apart from the exchanges, a worker runs the same phases as
+ * SimulationEngine.tick, so a run on one tile matches a headless run.
+ * Usage:
+ * <pre>java project4.TileWorker --coordinator port --tile k --tiles n
+ *     --seed n [--threads n] [config]</pre>
+ */
+public class TileWorker implements Closeable {
+    private final SimulationEngine engine;
+    private final AgentStore store;
+    private final int tile;
+    private final int tiles;
+    private final double stripWidth;
+    private final double radius;
+    private final Socket coordinator;
+    private final DataInputStream control;
+    private final DataOutputStream report;
+    private Link left;
+    private Link right;
+    private final IntList leftGhosts = new IntList(64);
+    private final IntList rightGhosts = new IntList(64);
+    private final ByteArrayOutputStream toLeft = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream toRight = new ByteArrayOutputStream();
+    private final long[] counts = new long[Agent.State.values().length];
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Connection to the worker of a neighboring strip
+     */
+    private static final class Link implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final boolean writesFirst;
+
+        /**
+         * @param socket connected socket
+         * @param writesFirst true if this worker owns the lower strip of
+         *                    the two, and so writes first in each exchange
+         * @throws IOException If the socket's streams cannot be opened
+         */
+        Link(Socket socket, boolean writesFirst) throws IOException {
+            this.socket = socket;
+            this.writesFirst = writesFirst;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), BUFFER_SIZE));
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(), BUFFER_SIZE));
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Writes this worker's half of an exchange
+     */
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the other worker's half of an exchange
+     */
+    private interface Receiver {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Builds the agents of this worker's strip, registers with the runner
+     * and connects to the workers of the neighboring strips
+     * @param engine engine whose parameters and seed are already set, but
+     *               which has not been initialized
+     * @param tile index of this worker's strip, from left to right
+     * @param tiles amount of strips
+     * @param port port of the runner on the loopback interface
+     * @throws IOException If a connection fails
+     * @throws IllegalArgumentException If the strips are narrower than the
+     * exposure distance
+     */
+    public TileWorker(SimulationEngine engine, int tile, int tiles, int port)
+            throws IOException {
+        this.engine = engine;
+        this.tile = tile;
+        this.tiles = tiles;
+
+        engine.layoutArea();
+        radius = engine.getNeighborRadius();
+        stripWidth = engine.getSimWidth() / tiles;
+
+        if (stripWidth < radius) {
+            throw new IllegalArgumentException("Strips of " + stripWidth +
+                    " pixels are narrower than the exposure distance");
+        }
+
+        engine.init(x -> stripOf(x) == tile, tile * stripWidth,
+                (tile + 1) * stripWidth);
+        store = engine.getStore();
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        try (ServerSocket listener = new ServerSocket(0, 1, loopback)) {
+            coordinator = new Socket(loopback, port);
+            control = new DataInputStream(new BufferedInputStream(
+                    coordinator.getInputStream()));
+            report = new DataOutputStream(new BufferedOutputStream(
+                    coordinator.getOutputStream()));
+            report.writeInt(tile);
+            report.writeInt(listener.getLocalPort());
+            report.flush();
+
+            int rightPort = control.readInt();
+            if (rightPort > 0) {
+                right = new Link(new Socket(loopback, rightPort), true);
+            }
+            if (tile > 0) left = new Link(listener.accept(), false);
+        }
+    }
+
+    /**
+     * Entry point of a worker process
+     * @param args Command line arguments from the DistributedRunner
+     */
+    public static void main(String[] args) {
+        int port = -1;
+        int tile = 0;
+        int tiles = 1;
+        int threads = 1;
+        long seed = 0;
+        String configFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--coordinator" -> port = Integer.parseInt(args[++i]);
+                    case "--tile" -> tile = Integer.parseInt(args[++i]);
+                    case "--tiles" -> tiles = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    default -> {
+                        if (configFile == null) configFile = args[i];
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exc) {
+            System.err.println("Invalid command line options");
+            System.exit(1);
+        }
+
+        Map<String, Double> params = new HashMap<>();
+
+        if (configFile != null) {
+            try {
+                params = FileIO.loadDiseaseParams(new File(configFile));
+            } catch (IOException exc) {
+                System.err.println("Unable to read config file " + configFile);
+                System.exit(1);
+            }
+        }
+
+        params.remove("execution");
+        SimulationEngine engine = new SimulationEngine(threads);
+        engine.setParams(params);
+        engine.setSeed(seed);
+
+        try (TileWorker worker = new TileWorker(engine, tile, tiles, port)) {
+            worker.run();
+        } catch (IOException | IllegalArgumentException exc) {
+            System.err.println("Tile " + tile + ": " + exc.getMessage());
+            System.exit(1);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Reports the counts of this strip to the runner before the first day
+     * and after every day, and runs the next day until the runner says the
+     * simulation is settled
+     * @throws IOException If a connection fails
+     */
+    public void run() throws IOException {
+        sendReport();
+
+        while (control.readBoolean()) {
+            while (!engine.getClock().isDayTick()) {
+                tick();
+            }
+
+            tick();
+            sendReport();
+        }
+    }
+
+    /**
+     * Sends the day, the amount of agents in this strip and in each state,
+     * and whether this strip is settled to the runner
+     * @throws IOException If the connection fails
+     */
+    private void sendReport() throws IOException {
+        engine.getCounters().snapshot(counts);
+        report.writeInt(engine.getDay());
+        report.writeInt(engine.getAgentCount());
+
+        for (long count : counts) {
+            report.writeLong(count);
+        }
+
+        report.writeBoolean(engine.isSettled());
+        report.flush();
+    }
+
+    /**
+     * Runs one tick of this strip, with the same phases as
+     * SimulationEngine.tick. Ticks which do not end a day only move the
+     * agents and update the spatial grid, since the neighbors are only used
+     * by the spread phase.
+     * @throws IOException If a connection fails
+     */
+    private void tick() throws IOException {
+        boolean dayTick = engine.getClock().isDayTick();
+        if (dayTick) store.own(AgentStore.PROGRESSION);
+        if (engine.isMoveOn()) engine.movePhase();
+
+        if (!dayTick) {
+            engine.updateGrid();
+        } else {
+            migrate();
+            int owned = store.size();
+            exchangeGhosts();
+            engine.updateNeighbors();
+            engine.spreadPhase();
+            returnMail(owned);
+            store.truncate(owned);
+            engine.progressionPhase();
+            engine.inboxPhase(engine.getTelemetry());
+        }
+
+        engine.endTick();
+    }
+
+    /**
+     * Hands the agents which left this strip over to the neighboring
+     * workers and adds the agents they hand over, then recounts the states
+     * and files the agents in the calendar again, since removing agents
+     * moves others to new indices
+     * @throws IOException If a connection fails
+     */
+    private void migrate() throws IOException {
+        toLeft.reset();
+        toRight.reset();
+        DataOutputStream leftOut = new DataOutputStream(toLeft);
+        DataOutputStream rightOut = new DataOutputStream(toRight);
+        int[] moved = new int[2];
+
+        for (int i = store.size() - 1; i >= 0; i--) {
+            int strip = stripOf(store.getX(i));
+            if (strip == tile) continue;
+
+            if (strip < tile) {
+                store.writeAgent(i, leftOut);
+                moved[0]++;
+            } else {
+                store.writeAgent(i, rightOut);
+                moved[1]++;
+            }
+
+            engine.removeAgent(i);
+        }
+
+        Receiver arrivals = in -> {
+            for (int n = in.readInt(); n > 0; n--) {
+                engine.addAgent(in);
+            }
+        };
+
+        exchange(left, out -> {
+            out.writeInt(moved[0]);
+            toLeft.writeTo(out);
+        }, arrivals);
+        exchange(right, out -> {
+            out.writeInt(moved[1]);
+            toRight.writeTo(out);
+        }, arrivals);
+        engine.countStates();
+        engine.reindexAgents();
+    }
+
+    /**
+     * Sends the agents within the exposure distance of each border to the
+     * worker across it, and adds the agents it sends as ghosts at the end
+     * of the store, first from the left and then from the right
+     * @throws IOException If a connection fails
+     */
+    private void exchangeGhosts() throws IOException {
+        int owned = store.size();
+        double leftEdge = tile * stripWidth + radius;
+        double rightEdge = (tile + 1) * stripWidth - radius;
+
+        exchange(left, out -> writeBorder(out, owned, true, leftEdge),
+                in -> readGhosts(in, leftGhosts));
+        exchange(right, out -> writeBorder(out, owned, false, rightEdge),
+                in -> readGhosts(in, rightGhosts));
+    }
+
+    /**
+     * Writes the index and position of every agent on one side of an edge
+     * @param out stream to the neighboring worker
+     * @param owned amount of agents owned by this worker
+     * @param below true to write the agents left of the edge, false for
+     *              those right of it
+     * @param edge x coordinate of the edge
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeBorder(DataOutputStream out, int owned, boolean below,
+                             double edge) throws IOException {
+        int count = 0;
+
+        for (int i = 0; i < owned; i++) {
+            if (below == store.getX(i) < edge) count++;
+        }
+
+        out.writeInt(count);
+
+        for (int i = 0; i < owned; i++) {
+            if (below == store.getX(i) < edge) {
+                out.writeInt(i);
+                out.writeDouble(store.getX(i));
+                out.writeDouble(store.getY(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the agents sent by a neighboring worker as ghosts
+     * @param in stream from the neighboring worker
+     * @param ghosts list receiving the index of each ghost in the
+     *               neighboring worker's store
+     * @throws IOException If the stream cannot be read
+     */
+    private void readGhosts(DataInputStream in, IntList ghosts)
+            throws IOException {
+        ghosts.clear();
+
+        for (int n = in.readInt(); n > 0; n--) {
+            ghosts.add(in.readInt());
+            store.addGhost(in.readDouble(), in.readDouble());
+        }
+    }
+
+    /**
+     * Returns the mail sent to the ghosts to the workers owning them, and
+     * delivers the mail they return to this worker's agents
+     * @param owned amount of agents owned by this worker, after which the
+     *              ghosts from the left and then from the right are stored
+     * @throws IOException If a connection fails
+     */
+    private void returnMail(int owned) throws IOException {
+        Receiver delivery = in -> {
+            for (int n = in.readInt(); n > 0; n--) {
+                store.sendMail(in.readInt(), in.readInt());
+            }
+        };
+
+        int rightStart = owned + leftGhosts.size();
+        exchange(left, out -> writeMail(out, leftGhosts, owned), delivery);
+        exchange(right, out -> writeMail(out, rightGhosts, rightStart),
+                delivery);
+    }
+
+    /**
+     * Writes the mail of every ghost from one neighbor which received any
+     * @param out stream to the neighboring worker
+     * @param ghosts index of each ghost in the neighboring worker's store
+     * @param start index of the first of the ghosts in this store
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeMail(DataOutputStream out, IntList ghosts, int start)
+            throws IOException {
+        int count = 0;
+
+        for (int g = 0; g < ghosts.size(); g++) {
+            if (store.getMail(start + g) != 0) count++;
+        }
+
+        out.writeInt(count);
+
+        for (int g = 0; g < ghosts.size(); g++) {
+            int mail = store.getMail(start + g);
+
+            if (mail != 0) {
+                out.writeInt(ghosts.get(g));
+                out.writeInt(mail);
+            }
+        }
+    }
+
+    /**
+     * Runs one exchange over a link. The worker of the lower strip writes
+     * its half and then reads, while the other reads and then writes.
+     * @param link link to a neighboring worker, or null if there is none
+     * @param payload writer of this worker's half
+     * @param receiver reader of the other worker's half
+     * @throws IOException If the connection fails
+     */
+    private static void exchange(Link link, Payload payload, Receiver receiver)
+            throws IOException {
+        if (link == null) return;
+
+        if (link.writesFirst) {
+            payload.write(link.out);
+            link.out.flush();
+            receiver.read(link.in);
+        } else {
+            receiver.read(link.in);
+            payload.write(link.out);
+            link.out.flush();
+        }
+    }
+
+    /**
+     * @param x x coordinate of an agent
+     * @return Index of the strip holding the coordinate. Agents past the
+     * edges of the area belong to the first or last strip.
+     */
+    private int stripOf(double x) {
+        return Math.max(0, Math.min(tiles - 1, (int) (x / stripWidth)));
+    }
+
+    /**
+     * Closes the connections to the runner and the neighboring workers
+     * @throws IOException If a connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (left != null) left.close();
+        if (right != null) right.close();
+        coordinator.close();
+    }
+}
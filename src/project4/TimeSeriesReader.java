@@ -0,0 +1,183 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the rows of a file written by a ColumnarTimeSeriesSink back one
+ * day at a time. Only one block of the file is held in memory, so series
+ * of any length can be read. The reader is a cursor: call next to move to
+ * the following day, then read its columns with the getters. Usage as a
+ * converter to CSV:
+ * <pre>java project4.TimeSeriesReader series.bin</pre>
+ */
+public class TimeSeriesReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int[][] block = new int[TimeSeriesSink.COLUMNS.size()]
+            [ColumnarTimeSeriesSink.BLOCK_ROWS];
+    private int rows = 0;
+    private int row = -1;
+    private static final int STATES = Agent.State.values().length;
+
+    /**
+     * Opens a time series file and checks its header
+     * @param file time series file to be read
+     * @throws IOException If the file cannot be read, or is not a time
+     * series with the columns of this version
+     */
+    public TimeSeriesReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(0);
+
+        if (!fill(8) || buffer.getInt() != ColumnarTimeSeriesSink.MAGIC ||
+                buffer.getShort() != ColumnarTimeSeriesSink.VERSION ||
+                buffer.getShort() != block.length) {
+            channel.close();
+            throw new IOException(file + " is not a time series");
+        }
+
+        for (int c = 0; c < block.length; c++) {
+            if (!fill(Short.BYTES)) throw new EOFException("Truncated header");
+            int length = buffer.getShort();
+            if (!fill(length)) throw new EOFException("Truncated header");
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    /**
+     * Moves to the next day, reading the next block of the file if needed
+     * @return True if there was another day, false at the end of the series
+     * @throws IOException If the file cannot be read, or ends part way
+     * through a block
+     */
+    public boolean next() throws IOException {
+        if (++row < rows) return true;
+        if (!fill(Integer.BYTES)) return false;
+
+        rows = buffer.getInt();
+        row = 0;
+
+        if (rows < 1 || rows > ColumnarTimeSeriesSink.BLOCK_ROWS) {
+            throw new IOException("Corrupt time series block");
+        }
+
+        for (int[] values : block) {
+            for (int r = 0; r < rows; r++) {
+                if (!fill(Integer.BYTES)) {
+                    throw new EOFException("Truncated time series");
+                }
+
+                values[r] = buffer.getInt();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes sure that the buffer holds at least the given amount of bytes,
+     * reading more of the file if needed
+     * @param bytes amount of bytes needed
+     * @return False if the file ended before any of the bytes were read
+     * @throws IOException If the file cannot be read, or ends after only
+     * some of the bytes
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return true;
+
+        buffer.compact();
+
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                boolean empty = buffer.position() == 0;
+                buffer.flip();
+                if (empty) return false;
+                throw new EOFException("Truncated time series");
+            }
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * @return Number of the current day
+     */
+    public int getDay() {
+        return block[0][row];
+    }
+
+    /**
+     * @param state state whose count is wanted
+     * @return Amount of agents in the given state at the end of the day
+     */
+    public int getCount(Agent.State state) {
+        return block[1 + state.ordinal()][row];
+    }
+
+    /**
+     * @return Amount of agents infected during the day
+     */
+    public int getNewInfections() {
+        return block[1 + STATES][row];
+    }
+
+    /**
+     * @return Amount of agents which died during the day
+     */
+    public int getDeaths() {
+        return block[2 + STATES][row];
+    }
+
+    /**
+     * Closes the time series file
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints every day of a time series file as CSV
+     * @param args path of the time series file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java project4.TimeSeriesReader file");
+            System.exit(1);
+        }
+
+        try (TimeSeriesReader reader =
+                     new TimeSeriesReader(Paths.get(args[0]))) {
+            System.out.println(String.join(",", TimeSeriesSink.COLUMNS));
+            StringBuilder line = new StringBuilder();
+
+            while (reader.next()) {
+                line.setLength(0);
+                line.append(reader.getDay());
+
+                for (Agent.State state : Agent.State.values()) {
+                    line.append(',').append(reader.getCount(state));
+                }
+
+                line.append(',').append(reader.getNewInfections())
+                        .append(',').append(reader.getDeaths());
+                System.out.println(line);
+            }
+        } catch (IOException exc) {
+            System.err.println(exc.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener which streams the per-day time series of a simulation into a
+ * TimeSeriesSink. The new infections and deaths are counted as the
+ * transitions arrive from the worker threads, and at the end of every day
+ * one row is written with the state counts of the engine. The sink is
+ * flushed at the end of the first day which ends at least flushMillis
+ * after the previous flush, so the file keeps up with a long run without
+ * a write per day.
+ */
+public class TimeSeriesRecorder implements SimulationListener, Closeable {
+    private final SimulationEngine engine;
+    private final TimeSeriesSink sink;
+    private final long flushNanos;
+    private final LongAdder newInfections = new LongAdder();
+    private final LongAdder deaths = new LongAdder();
+    private final long[] counts = new long[Agent.State.values().length];
+    private long lastFlush = System.nanoTime();
+
+    /**
+     * Starts recording the days of the given engine
+     * @param engine engine whose days are recorded
+     * @param sink sink the rows are written to, closed with the recorder
+     * @param flushMillis least time between two flushes of the sink
+     */
+    public TimeSeriesRecorder(SimulationEngine engine, TimeSeriesSink sink,
+                              long flushMillis) {
+        this.engine = engine;
+        this.sink = sink;
+        this.flushNanos = flushMillis * 1_000_000;
+        engine.addListener(this);
+    }
+
+    /**
+     * Counts new infections and deaths. Called by the engine from its
+     * worker threads.
+     * @param agentNum ID of the agent which changed state
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     */
+    @Override
+    public void stateChanged(int agentNum, Agent.State from,
+                             Agent.State to) {
+        if (to == Agent.State.INFECTED) newInfections.increment();
+        else if (to == Agent.State.DEAD) deaths.increment();
+    }
+
+    /**
+     * Writes the row of the day which has just ended, and flushes the sink
+     * if the flush interval has passed
+     * @param day Number of days elapsed since the simulation started
+     */
+    @Override
+    public synchronized void dayElapsed(int day) {
+        engine.getCounters().snapshot(counts);
+
+        try {
+            sink.writeDay(day, counts, newInfections.sumThenReset(),
+                    deaths.sumThenReset());
+            long now = System.nanoTime();
+
+            if (now - lastFlush >= flushNanos) {
+                sink.flush();
+                lastFlush = now;
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Writes the remaining rows and closes the sink
+     * @throws IOException If the sink cannot be written to
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sink.close();
+    }
+}
@@ -0,0 +1,69 @@
+package project4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Destination of the per-day time series of a simulation, written by a
+ * TimeSeriesRecorder. Every row holds the day, the amount of agents in
+ * each state at the end of that day, and the amount of agents newly
+ * infected and newly dead during it. Rows are streamed out as they arrive,
+ * so a sink never holds more than a bounded buffer of the history.
+ */
+public interface TimeSeriesSink extends Closeable {
+    /** Names of the columns of every row, in order */
+    List<String> COLUMNS = columnNames();
+
+    /**
+     * Appends the row of one day
+     * @param day number of the day which has just ended
+     * @param counts amount of agents in each state, indexed by ordinal
+     * @param newInfections amount of agents infected during the day
+     * @param deaths amount of agents which died during the day
+     * @throws IOException If the row cannot be written
+     */
+    void writeDay(int day, long[] counts, long newInfections, long deaths)
+            throws IOException;
+
+    /**
+     * Writes every buffered row through to the file, so that it can be read
+     * while the simulation is still running
+     * @throws IOException If the rows cannot be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Opens the sink matching the file name: CSV for names ending in .csv,
+     * otherwise the binary columnar format
+     * @param file file to be written, replacing any existing file
+     * @return New sink writing to the file
+     * @throws IOException If the file cannot be created
+     */
+    static TimeSeriesSink open(Path file) throws IOException {
+        if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+            return new CsvTimeSeriesSink(file);
+        }
+
+        return new ColumnarTimeSeriesSink(file);
+    }
+
+    /**
+     * @return The day column, one column per state, then the new
+     * infections and deaths columns
+     */
+    private static List<String> columnNames() {
+        List<String> names = new ArrayList<>();
+        names.add("day");
+
+        for (Agent.State state : Agent.State.values()) {
+            names.add(state.toString());
+        }
+
+        names.add("new_infections");
+        names.add("deaths");
+        return List.copyOf(names);
+    }
+}
@@ -0,0 +1,148 @@
+package project4;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free ring buffer of agent state transitions. Any number of
+ * worker threads publish transitions without allocating, each packed into
+ * a single long, and one consumer drains the most recent ones. When the
+ * consumer falls behind, the oldest transitions are overwritten, so the
+ * consumer's cost only depends on how many transitions it asks for.
+ */
+public class TransitionRing {
+    private final AtomicLongArray events;
+    private final AtomicLongArray published;
+    private final AtomicLong next = new AtomicLong();
+    private final int mask;
+    private long readSeq = 0;
+    private static final Agent.State[] STATES = Agent.State.values();
+
+    /**
+     * Creates a new, empty ring
+     * @param capacity amount of transitions kept, rounded up to a power of 2
+     */
+    public TransitionRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        events = new AtomicLongArray(size);
+        published = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Publishes a transition. Safe to call from any thread. The publisher
+     * claims the slot by swapping its stamp for the negated sequence number,
+     * stores the transition, and only then stamps the slot with the sequence
+     * number, so a consumer never takes a transition from a slot which is
+     * being overwritten. A publisher which finds the slot claimed by a later
+     * lap drops its transition, which the ring has already moved past, and
+     * one which finds an earlier lap still writing waits for it to finish.
+     * @param agentNum ID of the agent which changed state
+     * @param from State the agent was in before the change
+     * @param to State the agent is in after the change
+     * @param day Day on which the change occurred, below 2^24
+     */
+    public void publish(int agentNum, Agent.State from, Agent.State to,
+                        int day) {
+        long seq = next.getAndIncrement();
+        int slot = (int) seq & mask;
+
+        while (true) {
+            long stamp = published.get(slot);
+            long owner = Math.abs(stamp) - 1;
+
+            if (owner > seq) return;
+
+            if (stamp >= 0) {
+                if (published.compareAndSet(slot, stamp, -(seq + 1))) break;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+
+        events.set(slot, pack(agentNum, from, to, day));
+        published.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * Drains the transitions published since the last drain, keeping only
+     * the most recent ones. Must only be called by a single consumer thread.
+     * A transition whose publisher has not finished writing it yet is left
+     * for the next drain, along with every transition after it. The slot's
+     * sequence number is checked before and after the transition is read,
+     * so a slot which was overwritten in between is treated the same way.
+     * @param latest array receiving the most recent transitions, oldest
+     *               first, as packed longs
+     * @return Amount of transitions written into the array
+     */
+    public int drainLatest(long[] latest) {
+        long end = next.get();
+        long seq = Math.max(readSeq, end - Math.min(latest.length, mask + 1));
+        int count = 0;
+
+        for (; seq < end; seq++) {
+            int slot = (int) seq & mask;
+            if (published.get(slot) != seq + 1) break;
+            long event = events.get(slot);
+            if (published.get(slot) != seq + 1) break;
+            latest[count++] = event;
+        }
+
+        readSeq = seq;
+        return count;
+    }
+
+    /**
+     * Discards every transition published so far. Must only be called by the
+     * consumer thread.
+     */
+    public void clear() {
+        readSeq = next.get();
+    }
+
+    /**
+     * Packs a transition into a long
+     * @param agentNum ID of the agent
+     * @param from State before the change
+     * @param to State after the change
+     * @param day Day of the change
+     * @return Packed transition
+     */
+    private static long pack(int agentNum, Agent.State from, Agent.State to,
+                             int day) {
+        return ((long) agentNum << 32) | ((long) from.ordinal() << 28) |
+                ((long) to.ordinal() << 24) | (day & 0xFFFFFFL);
+    }
+
+    /**
+     * @param event packed transition
+     * @return ID of the agent which changed state
+     */
+    public static int agentNum(long event) {
+        return (int) (event >>> 32);
+    }
+
+    /**
+     * @param event packed transition
+     * @return State the agent was in before the change
+     */
+    public static Agent.State from(long event) {
+        return STATES[(int) (event >>> 28) & 0xF];
+    }
+
+    /**
+     * @param event packed transition
+     * @return State the agent is in after the change
+     */
+    public static Agent.State to(long event) {
+        return STATES[(int) (event >>> 24) & 0xF];
+    }
+
+    /**
+     * @param event packed transition
+     * @return Day on which the change occurred
+     */
+    public static int day(long event) {
+        return (int) (event & 0xFFFFFF);
+    }
+}
@@ -2,51 +2,489 @@ package project4;
 
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
  * A pane that displays the simulation state. Uses a canvas for efficiency
- * and is updated with the animation timer in Main.
+ * and is updated with the animation timer in Main. Each frame draws from a
+ * RenderSnapshot of the agents grouped by state. Small populations are
+ * drawn as ovals with one fill change per state. Above PIXEL_THRESHOLD
+ * agents, the agents are instead blitted as pixel discs into an image
+ * which is drawn onto the canvas in a single call.
+ * <p>
+ * The canvas is split into square tiles, and each frame only repaints the
+ * tiles covered by an agent whose position or state changed since the
+ * previous frame, before or after the change. A repainted tile is cleared
+ * and every agent overlapping it is drawn again, clipped to the tile, in
+ * the same order as a full redraw, so the result matches one exactly. When
+ * movement is off or the epidemic has settled, few or no tiles are dirty
+ * and a frame costs little more than capturing the snapshot. When more than
+ * half of the tiles are dirty, the whole canvas is redrawn instead.
  */
 public class UI extends Pane {
     private final GraphicsContext gc;
     private final double WIDTH;
     private final double HEIGHT;
-    private final Agent[][] grid;
+    private final AgentStore store;
+    private final RenderSnapshot snapshot = new RenderSnapshot();
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int tilesX;
+    private final int tilesY;
+    private final boolean[] dirty;
+    private int[] tileStart;
+    private int[] tileAgents = new int[0];
+    private int[] rank = new int[0];
+    private int[] candidates = new int[64];
+    private float[] lastX = new float[0];
+    private float[] lastY = new float[0];
+    private byte[] lastState = new byte[0];
+    private int lastSize = -1;
+    private WritableImage image;
+    private int[] pixels;
+    private static final int TILE_SIZE = 32;
+    private static final int MARGIN = 1;
+    private static final int PIXEL_THRESHOLD = 10000;
+    private static final int AGENT_SIZE = 8;
+    private static final boolean[] DISC = discMask();
+    private static final int[] STATE_ARGB = stateArgb();
+    private static final Agent.State[] STATES = Agent.State.values();
 
     /**
      * Creates a new simulation UI with the following parameters
-     * @param grid 2-D array of agents comprising the simulation
+     * @param store store holding the state of every agent in the simulation
      * @param width Width (in pixels) of the simulation UI
      * @param height Height (in pixels) of the simulation UI
      */
-    UI(Agent[][] grid, double width, double height){
-        this.grid = grid;
+    UI(AgentStore store, double width, double height){
+        this.store = store;
         this.WIDTH = width;
         this.HEIGHT = height;
+        this.imageWidth = (int) Math.ceil(width);
+        this.imageHeight = (int) Math.ceil(height);
+        this.tilesX = Math.max(1, (imageWidth + TILE_SIZE - 1) / TILE_SIZE);
+        this.tilesY = Math.max(1, (imageHeight + TILE_SIZE - 1) / TILE_SIZE);
+        this.dirty = new boolean[tilesX * tilesY];
+        this.tileStart = new int[tilesX * tilesY + 1];
         Canvas canvas = new Canvas(WIDTH, HEIGHT);
-        Agent.setScreenWidth(WIDTH);
-        Agent.setScreenHeight(HEIGHT);
         gc = canvas.getGraphicsContext2D();
         this.getChildren().add(canvas);
     }
 
     /**
-     * Clears the UI canvas, then redraws the agents at their updated
-     * positions and agent states
-     * @param rows Amount of rows in the 2-D agent array
-     * @param cols Amount of columns in the 2-D agent array
+     * Redraws the agents at their updated positions and agent states,
+     * repainting only the tiles where an agent changed since the last frame,
+     * or the whole canvas if most of it changed
      */
-    protected void updateAgents(int rows, int cols) {
-        gc.clearRect(0,0, WIDTH, HEIGHT);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (grid[i][j] != null) {
-                    gc.setFill(grid[i][j].getStateColor());
-                    gc.fillOval(grid[i][j].getX(),grid[i][j].getY(),8,8);
+    protected void updateAgents() {
+        snapshot.capture(store);
+        int size = snapshot.size();
+        int dirtyTiles = size == lastSize ? markDirtyTiles() : dirty.length;
+
+        if (dirtyTiles > dirty.length / 2) {
+            gc.clearRect(0,0, WIDTH, HEIGHT);
+
+            if (size < PIXEL_THRESHOLD) {
+                drawOvals();
+            } else {
+                drawPixels();
+            }
+        } else if (dirtyTiles > 0) {
+            bucketByTile();
+
+            for (int t = 0; t < dirty.length; t++) {
+                if (dirty[t]) drawTile(t % tilesX, t / tilesX);
+            }
+        }
+
+        if (dirtyTiles > 0) remember();
+    }
+
+    /**
+     * Compares the snapshot with the previous frame and marks every tile
+     * covered by a changed agent, at its old or new position, as dirty
+     * @return Amount of dirty tiles
+     */
+    private int markDirtyTiles() {
+        Arrays.fill(dirty, false);
+        int count = 0;
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            float x = snapshot.getX(i);
+            float y = snapshot.getY(i);
+
+            if (x != lastX[i] || y != lastY[i] ||
+                    snapshot.getState(i) != lastState[i]) {
+                count += markCovered(lastX[i], lastY[i]);
+                count += markCovered(x, y);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Marks the tiles covered by an agent drawn at the given point as dirty
+     * @param x x coordinate of the agent
+     * @param y y coordinate of the agent
+     * @return Amount of tiles which were not dirty before
+     */
+    private int markCovered(float x, float y) {
+        int count = 0;
+        int tx = tileOf(x, tilesX);
+        int ty = tileOf(y, tilesY);
+        int tx2 = tileOf(x + AGENT_SIZE + 2 * MARGIN, tilesX);
+        int ty2 = tileOf(y + AGENT_SIZE + 2 * MARGIN, tilesY);
+
+        for (int row = ty; row <= ty2; row++) {
+            for (int col = tx; col <= tx2; col++) {
+                int t = row * tilesX + col;
+
+                if (!dirty[t]) {
+                    dirty[t] = true;
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @param coordinate coordinate of the agent's bounding box
+     * @param tiles amount of tiles along the axis
+     * @return Tile holding the coordinate after moving it back by the
+     * margin, clamped to the canvas
+     */
+    private static int tileOf(float coordinate, int tiles) {
+        int tile = (int) Math.floor((coordinate - MARGIN) / TILE_SIZE);
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    /**
+     * Sorts the agents by the tile holding the top left corner of their
+     * bounding box with a counting sort. The sort is stable and runs over
+     * the grouped order, so each tile's agents stay in drawing order.
+     */
+    private void bucketByTile() {
+        int size = snapshot.size();
+
+        if (tileAgents.length < size) {
+            tileAgents = new int[size];
+            rank = new int[size];
+        }
+
+        Arrays.fill(tileStart, 0);
+
+        for (int i = 0; i < size; i++) {
+            tileStart[homeTile(i) + 1]++;
+        }
+
+        for (int t = 1; t < tileStart.length; t++) {
+            tileStart[t] += tileStart[t - 1];
+        }
+
+        int[] next = Arrays.copyOf(tileStart, tileStart.length - 1);
+
+        for (int p = 0; p < size; p++) {
+            int i = snapshot.agentAt(p);
+            rank[i] = p;
+            tileAgents[next[homeTile(i)]++] = i;
+        }
+    }
+
+    /**
+     * @param i index of the agent
+     * @return Tile holding the top left corner of the agent's bounding box
+     */
+    private int homeTile(int i) {
+        return tileOf(snapshot.getY(i), tilesY) * tilesX +
+                tileOf(snapshot.getX(i), tilesX);
+    }
+
+    /**
+     * Clears one tile and draws every agent overlapping it, clipped to the
+     * tile. An agent's bounding box is smaller than a tile, so only the
+     * agents of the tile and of the tiles above and to its left can reach
+     * into it.
+     * @param tx column of the tile
+     * @param ty row of the tile
+     */
+    private void drawTile(int tx, int ty) {
+        int left = tx * TILE_SIZE;
+        int top = ty * TILE_SIZE;
+        int right = Math.min(imageWidth, left + TILE_SIZE);
+        int bottom = Math.min(imageHeight, top + TILE_SIZE);
+        int count = 0;
+
+        for (int row = Math.max(0, ty - 1); row <= ty; row++) {
+            for (int col = Math.max(0, tx - 1); col <= tx; col++) {
+                int t = row * tilesX + col;
+
+                for (int k = tileStart[t]; k < tileStart[t + 1]; k++) {
+                    int i = tileAgents[k];
+                    float x = snapshot.getX(i);
+                    float y = snapshot.getY(i);
+
+                    if (x - MARGIN < right && x + AGENT_SIZE + MARGIN > left &&
+                            y - MARGIN < bottom &&
+                            y + AGENT_SIZE + MARGIN > top) {
+                        if (count == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, count * 2);
+                        }
+
+                        candidates[count++] = i;
+                    }
                 }
             }
         }
+
+        sortByRank(count);
+
+        if (snapshot.size() < PIXEL_THRESHOLD) {
+            drawOvalTile(left, top, right, bottom, count);
+        } else {
+            drawPixelTile(left, top, right, bottom, count);
+        }
+    }
+
+    /**
+     * Sorts the first candidates into drawing order with an insertion sort,
+     * since only a handful of agents overlap a tile
+     * @param count amount of candidates
+     */
+    private void sortByRank(int count) {
+        for (int a = 1; a < count; a++) {
+            int agent = candidates[a];
+            int b = a - 1;
+
+            while (b >= 0 && rank[candidates[b]] > rank[agent]) {
+                candidates[b + 1] = candidates[b];
+                b--;
+            }
+
+            candidates[b + 1] = agent;
+        }
+    }
+
+    /**
+     * Clears a tile of the canvas and draws the candidates as ovals clipped
+     * to it, changing the fill color only when the state changes
+     * @param left x coordinate of the tile
+     * @param top y coordinate of the tile
+     * @param right x coordinate after the tile
+     * @param bottom y coordinate after the tile
+     * @param count amount of candidates
+     */
+    private void drawOvalTile(int left, int top, int right, int bottom,
+                              int count) {
+        gc.save();
+        gc.beginPath();
+        gc.rect(left, top, right - left, bottom - top);
+        gc.clip();
+        gc.clearRect(left, top, right - left, bottom - top);
+        int fill = -1;
+
+        for (int c = 0; c < count; c++) {
+            int i = candidates[c];
+
+            if (snapshot.getState(i) != fill) {
+                fill = snapshot.getState(i);
+                gc.setFill(getStateColor(STATES[fill]));
+            }
+
+            gc.fillOval(snapshot.getX(i), snapshot.getY(i),
+                    AGENT_SIZE, AGENT_SIZE);
+        }
+
+        gc.restore();
+    }
+
+    /**
+     * Clears a tile of the pixel buffer, blits the candidates clipped to
+     * it, then draws that part of the image onto the canvas
+     * @param left x coordinate of the tile
+     * @param top y coordinate of the tile
+     * @param right x coordinate after the tile
+     * @param bottom y coordinate after the tile
+     * @param count amount of candidates
+     */
+    private void drawPixelTile(int left, int top, int right, int bottom,
+                               int count) {
+        for (int py = top; py < bottom; py++) {
+            Arrays.fill(pixels, py * imageWidth + left,
+                    py * imageWidth + right, 0);
+        }
+
+        for (int c = 0; c < count; c++) {
+            int i = candidates[c];
+            blitDisc((int) snapshot.getX(i), (int) snapshot.getY(i),
+                    STATE_ARGB[snapshot.getState(i)], left, top, right,
+                    bottom);
+        }
+
+        int w = right - left;
+        int h = bottom - top;
+        image.getPixelWriter().setPixels(left, top, w, h,
+                PixelFormat.getIntArgbPreInstance(), pixels,
+                top * imageWidth + left, imageWidth);
+        gc.clearRect(left, top, w, h);
+        gc.drawImage(image, left, top, w, h, left, top, w, h);
+    }
+
+    /**
+     * Keeps the positions and states of the snapshot to compare the next
+     * frame against
+     */
+    private void remember() {
+        int size = snapshot.size();
+
+        if (lastX.length < size) {
+            lastX = new float[size];
+            lastY = new float[size];
+            lastState = new byte[size];
+        }
+
+        for (int i = 0; i < size; i++) {
+            lastX[i] = snapshot.getX(i);
+            lastY[i] = snapshot.getY(i);
+            lastState[i] = snapshot.getState(i);
+        }
+
+        lastSize = size;
+    }
+
+    /**
+     * Draws every agent as an oval, one state at a time so that the fill
+     * color only changes once per state
+     */
+    private void drawOvals() {
+        for (Agent.State state : Agent.State.values()) {
+            int start = snapshot.groupStart(state.ordinal());
+            int end = snapshot.groupEnd(state.ordinal());
+            if (start == end) continue;
+
+            gc.setFill(getStateColor(state));
+
+            for (int p = start; p < end; p++) {
+                int i = snapshot.agentAt(p);
+                gc.fillOval(snapshot.getX(i), snapshot.getY(i),
+                        AGENT_SIZE, AGENT_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Writes every agent as a disc of pixels into an ARGB buffer, one state
+     * at a time, then draws the buffer onto the canvas as a single image
+     */
+    private void drawPixels() {
+        if (image == null) {
+            image = new WritableImage(imageWidth, imageHeight);
+            pixels = new int[imageWidth * imageHeight];
+        }
+
+        Arrays.fill(pixels, 0);
+
+        for (int s = 0; s < STATE_ARGB.length; s++) {
+            int argb = STATE_ARGB[s];
+
+            for (int p = snapshot.groupStart(s); p < snapshot.groupEnd(s);
+                 p++) {
+                int i = snapshot.agentAt(p);
+                blitDisc((int) snapshot.getX(i), (int) snapshot.getY(i),
+                        argb, 0, 0, imageWidth, imageHeight);
+            }
+        }
+
+        PixelWriter writer = image.getPixelWriter();
+        writer.setPixels(0, 0, imageWidth, imageHeight,
+                PixelFormat.getIntArgbPreInstance(),
+                IntBuffer.wrap(pixels), imageWidth);
+        gc.drawImage(image, 0, 0);
+    }
+
+    /**
+     * Writes a disc of the given color whose bounding box has its top left
+     * corner at the given point, clipped to the given rectangle
+     * @param left x coordinate of the bounding box
+     * @param top y coordinate of the bounding box
+     * @param argb premultiplied ARGB color of the disc
+     * @param clipLeft x coordinate of the clip rectangle
+     * @param clipTop y coordinate of the clip rectangle
+     * @param clipRight x coordinate after the clip rectangle
+     * @param clipBottom y coordinate after the clip rectangle
+     */
+    private void blitDisc(int left, int top, int argb, int clipLeft,
+                          int clipTop, int clipRight, int clipBottom) {
+        for (int dy = 0; dy < AGENT_SIZE; dy++) {
+            int py = top + dy;
+            if (py < clipTop || py >= clipBottom) continue;
+            int row = py * imageWidth;
+
+            for (int dx = 0; dx < AGENT_SIZE; dx++) {
+                int px = left + dx;
+                if (px < clipLeft || px >= clipRight) continue;
+                if (DISC[dy * AGENT_SIZE + dx]) pixels[row + px] = argb;
+            }
+        }
+    }
+
+    /**
+     * @return Mask of the pixels covered by an agent's disc, row by row
+     */
+    private static boolean[] discMask() {
+        boolean[] mask = new boolean[AGENT_SIZE * AGENT_SIZE];
+        double r = AGENT_SIZE / 2.0;
+
+        for (int dy = 0; dy < AGENT_SIZE; dy++) {
+            for (int dx = 0; dx < AGENT_SIZE; dx++) {
+                double cx = dx + .5 - r;
+                double cy = dy + .5 - r;
+                mask[dy * AGENT_SIZE + dx] = cx * cx + cy * cy <= r * r;
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * @return Opaque ARGB color of each agent state, indexed by ordinal
+     */
+    private static int[] stateArgb() {
+        Agent.State[] states = Agent.State.values();
+        int[] argb = new int[states.length];
+
+        for (int s = 0; s < states.length; s++) {
+            Color color = getStateColor(states[s]);
+            argb[s] = 0xFF000000 |
+                    ((int) Math.round(color.getRed() * 255) << 16) |
+                    ((int) Math.round(color.getGreen() * 255) << 8) |
+                    (int) Math.round(color.getBlue() * 255);
+        }
+
+        return argb;
+    }
+
+    /**
+     * @param state Agent state to be displayed
+     * @return Color shade used to represent the given agent state
+     */
+    protected static Color getStateColor(Agent.State state){
+        return switch (state) {
+            case VULNERABLE -> Color.BLUE;
+            case INFECTED -> Color.SALMON;
+            case SICK -> Color.RED;
+            case DEAD -> Color.BLACK;
+            case IMMUNE -> Color.GREEN;
+            case ASYMPTOMATIC -> Color.YELLOWGREEN;
+        };
     }
 
     /**